@@ -0,0 +1,62 @@
+package com.stahu.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs resolved programs on the tree walker. Scanning, parsing and
+ * resolution happen once in setup; each invocation only interprets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+
+    @Param({"fib", "nestedLoops", "stringConcat", "closureCounters", "deepEnvironments"})
+    String workload;
+
+    private List<Stmt> statements;
+    private Interpreter interpreter;
+
+    @Setup
+    public void setup() {
+        String source = switch (workload) {
+            case "fib" -> Workloads.FIB;
+            case "nestedLoops" -> Workloads.NESTED_LOOPS;
+            case "stringConcat" -> Workloads.STRING_CONCAT;
+            case "closureCounters" -> Workloads.CLOSURE_COUNTERS;
+            case "deepEnvironments" -> Workloads.DEEP_ENVIRONMENTS;
+            default -> throw new IllegalArgumentException("Unknown workload: " + workload);
+        };
+        List<Stmt> parsed = new Parser(new Scanner(source).scanTokens()).parse();
+        statements = new Resolver().resolve(parsed);
+        if (Lox.hadError) {
+            throw new IllegalStateException("Workload " + workload + " does not compile.");
+        }
+        interpreter = new Interpreter();
+    }
+
+    @Benchmark
+    public Interpreter interpret() {
+        interpreter.interpret(statements);
+        if (Lox.hadRuntimeError) {
+            throw new IllegalStateException("Workload " + workload + " failed.");
+        }
+        return interpreter;
+    }
+}
@@ -0,0 +1,100 @@
+package com.stahu.lox;
+
+/**
+ * Lox programs shared by the benchmark suites. None of them print, so the
+ * measurement is not dominated by console output; results are left in
+ * globals instead.
+ */
+final class Workloads {
+
+    private Workloads() {
+    }
+
+    static final String FIB = """
+            fun fib(n) {
+              if (n < 2) return n;
+              return fib(n - 1) + fib(n - 2);
+            }
+            var result = fib(20);
+            """;
+
+    static final String NESTED_LOOPS = """
+            var sum = 0;
+            for (var i = 0; i < 200; i = i + 1) {
+              for (var j = 0; j < 200; j = j + 1) {
+                sum = sum + i * j;
+              }
+            }
+            """;
+
+    static final String STRING_CONCAT = """
+            var text = "";
+            for (var i = 0; i < 500; i = i + 1) {
+              text = text + "lox";
+            }
+            """;
+
+    static final String CLOSURE_COUNTERS = """
+            fun makeCounter() {
+              var count = 0;
+              fun increment() {
+                count = count + 1;
+                return count;
+              }
+              return increment;
+            }
+            var total = 0;
+            for (var i = 0; i < 100; i = i + 1) {
+              var counter = makeCounter();
+              for (var j = 0; j < 50; j = j + 1) {
+                total = total + counter();
+              }
+            }
+            """;
+
+    static final String DEEP_ENVIRONMENTS = """
+            var result = 0;
+            {
+              var a = 1;
+              {
+                var b = 2;
+                {
+                  var c = 3;
+                  {
+                    var d = 4;
+                    {
+                      var e = 5;
+                      {
+                        var f = 6;
+                        {
+                          for (var i = 0; i < 5000; i = i + 1) {
+                            result = result + a + b + c + d + e + f;
+                          }
+                        }
+                      }
+                    }
+                  }
+                }
+              }
+            }
+            """;
+
+    private static final String MIXED = """
+            fun greet(name) { return "Hello, " + name + "!"; }
+            var limit = 1234.5; // A comment to skip.
+            while (limit >= 0 and !(limit == 17)) { limit = limit - 1; }
+            if (limit != nil) print greet("world"); else print false;
+            """;
+
+    /**
+     * Repeats a snippet mixing every token kind until the source has at
+     * least {@code lines} lines.
+     */
+    static String generated(int lines) {
+        StringBuilder source = new StringBuilder();
+        for (int written = 0; written < lines; written += 4) {
+            source.append(MIXED);
+        }
+        return source.toString();
+    }
+}
@@ -0,0 +1,490 @@
+package com.stahu.lox;
+
+import com.stahu.lox.model.Symbol;
+import com.stahu.lox.model.Token;
+import com.stahu.lox.model.TokenType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of resolved {@link Stmt}/{@link Expr} trees, used by
+ * {@link ProgramCache}. Nodes are written pre-order as a tag byte followed by
+ * their fields. Integers are variable-length, token lines are stored as
+ * deltas, and every string is written once and referred to by index
+ * afterwards. Resolution results (depths, slots, frame sizes) are stored, so
+ * a loaded tree can run without the {@link Resolver}.
+ */
+final class AstSerializer {
+    // Statement tags.
+    private static final int BLOCK = 0;
+    private static final int EXPRESSION = 1;
+    private static final int FUNCTION = 2;
+    private static final int IF = 3;
+    private static final int PRINT = 4;
+    private static final int RETURN = 5;
+    private static final int VAR = 6;
+    private static final int WHILE = 7;
+
+    // Expression tags.
+    private static final int ASSIGN = 0;
+    private static final int BINARY = 1;
+    private static final int CALL = 2;
+    private static final int GROUPING = 3;
+    private static final int LITERAL = 4;
+    private static final int LOGICAL = 5;
+    private static final int UNARY = 6;
+    private static final int VARIABLE = 7;
+
+    // Literal value tags.
+    private static final int NIL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int NUMBER = 3;
+    private static final int STRING = 4;
+
+    private static final int ABSENT = 0xFF;
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private AstSerializer() {
+    }
+
+    static void serialize(List<Stmt> statements, OutputStream out) throws IOException {
+        try {
+            Writer writer = new Writer(out);
+            writer.statements(statements);
+            writer.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    static List<Stmt> deserialize(ByteBuffer in) {
+        return new Reader(in).statements();
+    }
+
+    private static final class Writer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final OutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private int line = 0;
+
+        // Buffered here rather than by the stream, whose write(int) takes a lock.
+        private final byte[] buffer = new byte[8192];
+        private int position = 0;
+
+        Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        private void write(int b) {
+            if (position == buffer.length) flush();
+            buffer[position++] = (byte) b;
+        }
+
+        private void write(byte[] bytes) {
+            if (bytes.length > buffer.length - position) flush();
+            if (bytes.length > buffer.length) {
+                try {
+                    out.write(bytes);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        // The visitor methods cannot throw IOException, so it travels unchecked.
+        void flush() {
+            try {
+                out.write(buffer, 0, position);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position = 0;
+        }
+
+        void statements(List<Stmt> statements) {
+            varInt(statements.size());
+            for (Stmt statement : statements) {
+                statement.accept(this);
+            }
+        }
+
+        void expression(Expr expr) {
+            if (expr == null) {
+                write(ABSENT);
+            } else {
+                expr.accept(this);
+            }
+        }
+
+        void varInt(int value) {
+            // Depths and slots of globals are -1; shift so they stay one byte.
+            unsigned(value + 1);
+        }
+
+        void unsigned(int bits) {
+            while ((bits & ~0x7F) != 0) {
+                write((bits & 0x7F) | 0x80);
+                bits >>>= 7;
+            }
+            write(bits);
+        }
+
+        void string(String value) {
+            Integer index = strings.get(value);
+            if (index != null) {
+                varInt(index);
+                return;
+            }
+            varInt(strings.size());
+            strings.put(value, strings.size());
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varInt(bytes.length);
+            write(bytes);
+        }
+
+        void token(Token token) {
+            write(token.type().ordinal());
+            string(token.lexeme());
+            // Lines as zigzag-encoded deltas from the previous token's line.
+            int delta = token.line() - line;
+            unsigned((delta << 1) ^ (delta >> 31));
+            line = token.line();
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            write(BLOCK);
+            varInt(stmt.frameSize());
+            statements(stmt.statements());
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            write(EXPRESSION);
+            expression(stmt.expression());
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            write(FUNCTION);
+            token(stmt.name());
+            varInt(stmt.params().size());
+            for (Token param : stmt.params()) {
+                token(param);
+            }
+            varInt(stmt.slot());
+            varInt(stmt.frameSize());
+            statements(stmt.body());
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            write(IF);
+            expression(stmt.condition());
+            stmt.thenBranch().accept(this);
+            if (stmt.elseBranch() == null) {
+                write(ABSENT);
+            } else {
+                stmt.elseBranch().accept(this);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            write(PRINT);
+            expression(stmt.expression());
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            write(RETURN);
+            token(stmt.keyword());
+            expression(stmt.value());
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            write(VAR);
+            token(stmt.name());
+            varInt(stmt.slot());
+            expression(stmt.initializer());
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            write(WHILE);
+            expression(stmt.condition());
+            stmt.body().accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            write(ASSIGN);
+            token(expr.name());
+            varInt(expr.depth());
+            varInt(expr.slot());
+            expression(expr.value());
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            write(BINARY);
+            token(expr.operator());
+            expression(expr.left());
+            expression(expr.right());
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            write(CALL);
+            token(expr.paren());
+            expression(expr.callee());
+            varInt(expr.arguments().size());
+            for (Expr argument : expr.arguments()) {
+                expression(argument);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            write(GROUPING);
+            expression(expr.expr());
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            write(LITERAL);
+            Object value = expr.value();
+            if (value == null) {
+                write(NIL);
+            } else if (value instanceof Boolean bool) {
+                write(bool ? TRUE : FALSE);
+            } else if (value instanceof Double number) {
+                write(NUMBER);
+                long bits = Double.doubleToRawLongBits(number);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    write((int) (bits >>> shift));
+                }
+            } else {
+                write(STRING);
+                string((String) value);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            write(LOGICAL);
+            token(expr.operator());
+            expression(expr.left());
+            expression(expr.right());
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            write(UNARY);
+            token(expr.operator());
+            expression(expr.right());
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            write(VARIABLE);
+            token(expr.name());
+            varInt(expr.depth());
+            varInt(expr.slot());
+            return null;
+        }
+    }
+
+    private static final class Reader {
+        private final ByteBuffer in;
+        private final List<String> strings = new ArrayList<>();
+        private int line = 0;
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        List<Stmt> statements() {
+            int count = varInt();
+            List<Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(statement(in.get() & 0xFF));
+            }
+            return statements;
+        }
+
+        private int varInt() {
+            return unsigned() - 1;
+        }
+
+        private int unsigned() {
+            int bits = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = in.get();
+                bits |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return bits;
+        }
+
+        private String string() {
+            int index = varInt();
+            if (index < strings.size()) return strings.get(index);
+
+            byte[] bytes = new byte[varInt()];
+            in.get(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(value);
+            return value;
+        }
+
+        private Token token() {
+            TokenType type = TOKEN_TYPES[in.get()];
+            String lexeme = string();
+            int delta = unsigned();
+            line += (delta >>> 1) ^ -(delta & 1);
+            if (type == TokenType.IDENTIFIER) {
+                Symbol symbol = Symbol.intern(lexeme);
+                return new Token(type, symbol.name(), null, line, symbol);
+            }
+            return new Token(type, lexeme, null, line, null);
+        }
+
+        private Stmt statement(int tag) {
+            switch (tag) {
+                case BLOCK: {
+                    int frameSize = varInt();
+                    return new Stmt.Block(statements(), frameSize);
+                }
+                case EXPRESSION:
+                    return new Stmt.Expression(expression());
+                case FUNCTION: {
+                    Token name = token();
+                    int arity = varInt();
+                    List<Token> params = new ArrayList<>(arity);
+                    for (int i = 0; i < arity; i++) {
+                        params.add(token());
+                    }
+                    int slot = varInt();
+                    int frameSize = varInt();
+                    return new Stmt.Function(name, params, statements(), slot, frameSize);
+                }
+                case IF: {
+                    Expr condition = expression();
+                    Stmt thenBranch = statement(in.get() & 0xFF);
+                    int elseTag = in.get() & 0xFF;
+                    Stmt elseBranch = elseTag == ABSENT ? null : statement(elseTag);
+                    return new Stmt.If(condition, thenBranch, elseBranch);
+                }
+                case PRINT:
+                    return new Stmt.Print(expression());
+                case RETURN: {
+                    Token keyword = token();
+                    return new Stmt.Return(keyword, expression());
+                }
+                case VAR: {
+                    Token name = token();
+                    int slot = varInt();
+                    return new Stmt.Var(name, expression(), slot);
+                }
+                case WHILE: {
+                    Expr condition = expression();
+                    return new Stmt.While(condition, statement(in.get() & 0xFF));
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown statement tag " + tag + ".");
+            }
+        }
+
+        private Expr expression() {
+            int tag = in.get() & 0xFF;
+            switch (tag) {
+                case ABSENT:
+                    return null;
+                case ASSIGN: {
+                    Token name = token();
+                    int depth = varInt();
+                    int slot = varInt();
+                    return new Expr.Assign(name, expression(), depth, slot);
+                }
+                case BINARY: {
+                    Token operator = token();
+                    Expr left = expression();
+                    return new Expr.Binary(left, operator, expression());
+                }
+                case CALL: {
+                    Token paren = token();
+                    Expr callee = expression();
+                    int count = varInt();
+                    List<Expr> arguments = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        arguments.add(expression());
+                    }
+                    return new Expr.Call(callee, paren, arguments);
+                }
+                case GROUPING:
+                    return new Expr.Grouping(expression());
+                case LITERAL:
+                    return new Expr.Literal(literal());
+                case LOGICAL: {
+                    Token operator = token();
+                    Expr left = expression();
+                    return new Expr.Logical(left, operator, expression());
+                }
+                case UNARY: {
+                    Token operator = token();
+                    return new Expr.Unary(operator, expression());
+                }
+                case VARIABLE: {
+                    Token name = token();
+                    int depth = varInt();
+                    return new Expr.Variable(name, depth, varInt());
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown expression tag " + tag + ".");
+            }
+        }
+
+        private Object literal() {
+            int tag = in.get() & 0xFF;
+            switch (tag) {
+                case NIL: return null;
+                case FALSE: return false;
+                case TRUE: return true;
+                case NUMBER: return in.getDouble();
+                case STRING: return string();
+                default:
+                    throw new IllegalArgumentException("Unknown literal tag " + tag + ".");
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.stahu.lox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Collects printed lines in a large buffer and encodes each full buffer to
+ * UTF-8 in one go. Without a writer thread the bytes are written on the
+ * printing thread; with one, full buffers are handed over and the script
+ * carries on while they are written. A few buffers may be in flight, after
+ * which printing waits for the writer.
+ * <p>
+ * Spawned tasks print too, so buffering is synchronized on the sink.
+ */
+final class BufferedOutputSink implements OutputSink {
+    private static final int CAPACITY = 1 << 16;
+
+    private final OutputStream out;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final BlockingQueue<Object> pending;
+    private StringBuilder buffer = new StringBuilder(CAPACITY);
+
+    BufferedOutputSink(OutputStream out, boolean async) {
+        this.out = out;
+        if (async) {
+            this.pending = new ArrayBlockingQueue<>(4);
+            Thread.ofPlatform().name("lox-output").daemon().start(this::writeInBackground);
+        } else {
+            this.pending = null;
+        }
+    }
+
+    @Override
+    public synchronized void println(String line) {
+        buffer.append(line).append('\n');
+        if (buffer.length() >= CAPACITY) {
+            hand(encode(), false);
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        hand(encode(), true);
+    }
+
+    private ByteBuffer encode() {
+        try {
+            ByteBuffer bytes = encoder.encode(CharBuffer.wrap(buffer));
+            buffer.setLength(0);
+            return bytes;
+        } catch (CharacterCodingException e) {
+            // Cannot happen: malformed input is replaced.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes {@code bytes}, or queues them for the writer thread. When
+     * {@code wait} is set, returns only once they and everything queued
+     * before them are out.
+     */
+    private void hand(ByteBuffer bytes, boolean wait) {
+        if (pending == null) {
+            write(bytes);
+            if (wait) flushStream();
+            return;
+        }
+
+        try {
+            if (bytes.hasRemaining()) pending.put(bytes);
+            if (wait) {
+                CountDownLatch written = new CountDownLatch(1);
+                pending.put(written);
+                written.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeInBackground() {
+        try {
+            while (true) {
+                Object next = pending.take();
+                try {
+                    if (next instanceof ByteBuffer bytes) {
+                        write(bytes);
+                    } else {
+                        flushStream();
+                    }
+                } catch (UncheckedIOException e) {
+                    // Output is gone, for example a closed pipe; keep draining so flush returns.
+                }
+                if (next instanceof CountDownLatch written) {
+                    written.countDown();
+                }
+            }
+        } catch (InterruptedException e) {
+            // The process is exiting.
+        }
+    }
+
+    private void write(ByteBuffer bytes) {
+        try {
+            out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flushStream() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
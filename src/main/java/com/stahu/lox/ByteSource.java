@@ -0,0 +1,40 @@
+package com.stahu.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8 encoded source viewed in place, typically over a memory-mapped file.
+ * {@link #charAt} exposes raw bytes: Lox syntax is ASCII and UTF-8 never
+ * reuses ASCII bytes inside multi-byte sequences, so the scanner can work on
+ * bytes directly. Text cut out with {@link #subSequence} is decoded properly.
+ */
+final class ByteSource implements CharSequence {
+    private final ByteBuffer bytes;
+
+    ByteSource(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public int length() {
+        return bytes.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(index) & 0xFF);
+    }
+
+    @Override
+    public String subSequence(int start, int end) {
+        byte[] text = new byte[end - start];
+        bytes.get(start, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length());
+    }
+}
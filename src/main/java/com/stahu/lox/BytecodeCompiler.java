@@ -0,0 +1,301 @@
+package com.stahu.lox;
+
+import com.stahu.lox.model.Token;
+import com.stahu.lox.model.TokenType;
+
+import java.util.List;
+
+/**
+ * Compiles resolved {@link Stmt}/{@link Expr} trees into {@link Chunk}s for
+ * the {@link VirtualMachine}. Locals keep the (depth, slot) coordinates the
+ * {@link Resolver} assigned, so the VM uses the same frames as the tree walker.
+ */
+class BytecodeCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private VmFunction function;
+    private int line = 1;
+
+    VmFunction compile(List<Stmt> statements) {
+        function = new VmFunction(null, 0, 0);
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+        emit(OpCode.NIL);
+        emit(OpCode.RETURN);
+        return function;
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void emit(byte op) {
+        function.chunk.write(op, line);
+    }
+
+    private void emitShort(int value) {
+        function.chunk.write(value >> 8, line);
+        function.chunk.write(value, line);
+    }
+
+    private void emit(byte op, int operand) {
+        emit(op);
+        emitShort(operand);
+    }
+
+    private int makeConstant(Object value) {
+        int index = function.chunk.addConstant(value);
+        if (index > 0xFFFF) {
+            Lox.error(line, "Too many constants in one chunk.");
+            return 0;
+        }
+        return index;
+    }
+
+    private int emitJump(byte op) {
+        emit(op);
+        emitShort(0xFFFF);
+        return function.chunk.count - 2;
+    }
+
+    private void patchJump(int offset) {
+        // -2 to adjust for the bytecode of the jump offset itself.
+        int jump = function.chunk.count - offset - 2;
+        if (jump > 0xFFFF) {
+            Lox.error(line, "Too much code to jump over.");
+        }
+        function.chunk.code[offset] = (byte) (jump >> 8);
+        function.chunk.code[offset + 1] = (byte) jump;
+    }
+
+    private void emitLoop(int loopStart) {
+        emit(OpCode.LOOP);
+        int offset = function.chunk.count - loopStart + 2;
+        if (offset > 0xFFFF) {
+            Lox.error(line, "Loop body too large.");
+        }
+        emitShort(offset);
+    }
+
+    private void defineVariable(Token name, int slot) {
+        line = name.line();
+        if (slot < 0) {
+            emit(OpCode.DEFINE_GLOBAL, makeConstant(name.symbol()));
+        } else {
+            emit(OpCode.DEFINE_LOCAL, slot);
+        }
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        emit(OpCode.ENTER_SCOPE, stmt.frameSize());
+        for (Stmt statement : stmt.statements()) {
+            compile(statement);
+        }
+        emit(OpCode.EXIT_SCOPE);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression());
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        VmFunction enclosing = function;
+        function = new VmFunction(stmt.name().lexeme(), stmt.params().size(), stmt.frameSize());
+        for (Stmt statement : stmt.body()) {
+            compile(statement);
+        }
+        emit(OpCode.NIL);
+        emit(OpCode.RETURN);
+        VmFunction compiled = function;
+        function = enclosing;
+
+        line = stmt.name().line();
+        emit(OpCode.CLOSURE, makeConstant(compiled));
+        defineVariable(stmt.name(), stmt.slot());
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition());
+        int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(stmt.thenBranch());
+
+        int elseJump = emitJump(OpCode.JUMP);
+        patchJump(thenJump);
+        emit(OpCode.POP);
+        if (stmt.elseBranch() != null) {
+            compile(stmt.elseBranch());
+        }
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression());
+        emit(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        line = stmt.keyword().line();
+        if (stmt.value() == null) {
+            emit(OpCode.NIL);
+        } else {
+            compile(stmt.value());
+        }
+        emit(OpCode.RETURN);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        line = stmt.name().line();
+        if (stmt.initializer() == null) {
+            emit(OpCode.NIL);
+        } else {
+            compile(stmt.initializer());
+        }
+        defineVariable(stmt.name(), stmt.slot());
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = function.chunk.count;
+        compile(stmt.condition());
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(stmt.body());
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value());
+        line = expr.name().line();
+        if (expr.depth() < 0) {
+            emit(OpCode.SET_GLOBAL, makeConstant(expr.name().symbol()));
+        } else {
+            emit(OpCode.SET_LOCAL, expr.depth());
+            emitShort(expr.slot());
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left());
+        compile(expr.right());
+        line = expr.operator().line();
+        switch (expr.operator().type()) {
+            case BANG_EQUAL -> emit(OpCode.NOT_EQUAL);
+            case EQUAL_EQUAL -> emit(OpCode.EQUAL);
+            case GREATER -> emit(OpCode.GREATER);
+            case GREATER_EQUAL -> emit(OpCode.GREATER_EQUAL);
+            case LESS -> emit(OpCode.LESS);
+            case LESS_EQUAL -> emit(OpCode.LESS_EQUAL);
+            case MINUS -> emit(OpCode.SUBTRACT);
+            case PLUS -> emit(OpCode.ADD);
+            case SLASH -> emit(OpCode.DIVIDE);
+            case STAR -> emit(OpCode.MULTIPLY);
+            default -> {
+                // Unreachable.
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        compile(expr.callee());
+        for (Expr argument : expr.arguments()) {
+            compile(argument);
+        }
+        line = expr.paren().line();
+        emit(OpCode.CALL);
+        function.chunk.write(expr.arguments().size(), line);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expr());
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value();
+        if (value == null) {
+            emit(OpCode.NIL);
+        } else if (value instanceof Boolean bool) {
+            emit(bool ? OpCode.TRUE : OpCode.FALSE);
+        } else {
+            emit(OpCode.CONSTANT, makeConstant(value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left());
+        line = expr.operator().line();
+        if (expr.operator().type() == TokenType.OR) {
+            int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+            int endJump = emitJump(OpCode.JUMP);
+            patchJump(elseJump);
+            emit(OpCode.POP);
+            compile(expr.right());
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+            emit(OpCode.POP);
+            compile(expr.right());
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right());
+        line = expr.operator().line();
+        switch (expr.operator().type()) {
+            case BANG -> emit(OpCode.NOT);
+            case MINUS -> emit(OpCode.NEGATE);
+            default -> {
+                // Unreachable.
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        line = expr.name().line();
+        if (expr.depth() < 0) {
+            emit(OpCode.GET_GLOBAL, makeConstant(expr.name().symbol()));
+        } else {
+            emit(OpCode.GET_LOCAL, expr.depth());
+            emitShort(expr.slot());
+        }
+        return null;
+    }
+}
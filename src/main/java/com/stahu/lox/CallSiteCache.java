@@ -0,0 +1,42 @@
+package com.stahu.lox;
+
+/**
+ * Polymorphic inline cache of a call site. Remembers up to {@link #LIMIT}
+ * callees that already passed the callable and arity checks for this site's
+ * argument count; past that the site is megamorphic and stops caching. Lox
+ * functions are remembered by their declaration, which all closures made
+ * from it share.
+ */
+final class CallSiteCache {
+    private static final int LIMIT = 4;
+    private static final Object[] EMPTY = new Object[0];
+
+    // Replaced, never mutated, and published through the volatile write, so
+    // readers on any thread see a complete array. Racing adds may drop an
+    // entry, which only costs that callee another check.
+    private volatile Object[] callees = EMPTY;
+    private boolean megamorphic = false;
+
+    boolean contains(Object callee) {
+        Object[] cached = callees;
+        for (Object entry : cached) {
+            if (entry == callee) return true;
+        }
+        return false;
+    }
+
+    void add(Object callee) {
+        if (megamorphic) return;
+
+        Object[] cached = callees;
+        if (cached.length == LIMIT) {
+            megamorphic = true;
+            callees = EMPTY;
+            return;
+        }
+        Object[] updated = new Object[cached.length + 1];
+        System.arraycopy(cached, 0, updated, 0, cached.length);
+        updated[cached.length] = callee;
+        callees = updated;
+    }
+}
@@ -0,0 +1,57 @@
+package com.stahu.lox;
+
+import com.stahu.lox.model.Symbol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled sequence of instructions with its constant pool and a line
+ * table holding the source line of every byte of code.
+ */
+class Chunk {
+    byte[] code = new byte[64];
+    int[] lines = new int[64];
+    int count = 0;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    private Object[] constantPool;
+
+    void write(int b, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = (byte) b;
+        lines[count] = line;
+        count++;
+    }
+
+    int addConstant(Object value) {
+        // Numbers, strings and global names are shared; functions always get their own entry.
+        boolean shareable = value instanceof Double || value instanceof String || value instanceof Symbol;
+        if (shareable) {
+            Integer existing = constantIndex.get(value);
+            if (existing != null) return existing;
+        }
+        constants.add(value);
+        int index = constants.size() - 1;
+        if (shareable) {
+            constantIndex.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * Freezes the constant pool into an array for the VM's dispatch loop.
+     */
+    Object[] constants() {
+        if (constantPool == null || constantPool.length != constants.size()) {
+            constantPool = constants.toArray();
+        }
+        return constantPool;
+    }
+}
@@ -0,0 +1,458 @@
+package com.stahu.lox;
+
+import com.stahu.lox.error.RuntimeError;
+import com.stahu.lox.model.Symbol;
+import com.stahu.lox.model.Token;
+import com.stahu.lox.model.TokenType;
+
+import java.util.List;
+
+/**
+ * Compiles resolved {@link Stmt}/{@link Expr} trees once into a tree of
+ * pre-bound Java closures. Operators, number literal operands and variable
+ * coordinates are fixed when a closure is created, so running the program
+ * only invokes closures; no visitor dispatch or operator switch is left.
+ */
+class ClosureCompiler implements Expr.Visitor<ClosureCompiler.ExprCode>,
+        Stmt.Visitor<ClosureCompiler.StmtCode> {
+
+    @FunctionalInterface
+    interface ExprCode {
+        Object evaluate(Environment frame);
+    }
+
+    @FunctionalInterface
+    interface Condition {
+        boolean test(Environment frame);
+    }
+
+    @FunctionalInterface
+    interface StmtCode {
+        void execute(Environment frame);
+    }
+
+    private final Globals globals;
+    private final OutputSink out;
+
+    ClosureCompiler(Globals globals, OutputSink out) {
+        this.globals = globals;
+        this.out = out;
+    }
+
+    StmtCode[] compile(List<Stmt> statements) {
+        StmtCode[] code = new StmtCode[statements.size()];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = compile(statements.get(i));
+        }
+        return code;
+    }
+
+    private StmtCode compile(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private ExprCode compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private Condition compileCondition(Expr expr) {
+        if (expr instanceof Expr.Binary binary) {
+            Condition comparison = compileComparison(binary);
+            if (comparison != null) return comparison;
+        }
+        if (expr instanceof Expr.Literal literal) {
+            boolean value = Values.isTruthy(literal.value());
+            return frame -> value;
+        }
+        ExprCode code = compile(expr);
+        return frame -> Values.isTruthy(code.evaluate(frame));
+    }
+
+    private static Expr unwrap(Expr expr) {
+        while (expr instanceof Expr.Grouping grouping) {
+            expr = grouping.expr();
+        }
+        return expr;
+    }
+
+    private static Double numberLiteral(Expr expr) {
+        if (unwrap(expr) instanceof Expr.Literal literal && literal.value() instanceof Double number) {
+            return number;
+        }
+        return null;
+    }
+
+    private static void checkNumberOperand(Token operator, Object operand) {
+        if (operand instanceof Double) return;
+        throw new RuntimeError(operator, "Operand must be a number.");
+    }
+
+    private static void checkNumberOperands(Token operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) return;
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    private static double divide(Token operator, double left, double right) {
+        if (right == (double) 0) {
+            throw new RuntimeError(operator, "Division by zero.");
+        }
+        return left / right;
+    }
+
+    private static Object add(Token operator, Object left, Object right) {
+        Object sum = Values.add(left, right);
+        if (sum == null) {
+            throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+        }
+        return sum;
+    }
+
+    /**
+     * Returns a primitive-boolean closure for numeric comparisons, or
+     * {@code null} when the expression is not a comparison.
+     */
+    private Condition compileComparison(Expr.Binary expr) {
+        Token operator = expr.operator();
+        TokenType type = operator.type();
+        if (type != TokenType.GREATER && type != TokenType.GREATER_EQUAL
+                && type != TokenType.LESS && type != TokenType.LESS_EQUAL) {
+            return null;
+        }
+
+        ExprCode left = compile(expr.left());
+        Double constant = numberLiteral(expr.right());
+        if (constant != null) {
+            double right = constant;
+            return switch (type) {
+                case GREATER -> frame -> leftNumber(operator, left.evaluate(frame)) > right;
+                case GREATER_EQUAL -> frame -> leftNumber(operator, left.evaluate(frame)) >= right;
+                case LESS -> frame -> leftNumber(operator, left.evaluate(frame)) < right;
+                default -> frame -> leftNumber(operator, left.evaluate(frame)) <= right;
+            };
+        }
+
+        ExprCode right = compile(expr.right());
+        return switch (type) {
+            case GREATER -> frame -> {
+                Object l = left.evaluate(frame);
+                Object r = right.evaluate(frame);
+                checkNumberOperands(operator, l, r);
+                return (double) l > (double) r;
+            };
+            case GREATER_EQUAL -> frame -> {
+                Object l = left.evaluate(frame);
+                Object r = right.evaluate(frame);
+                checkNumberOperands(operator, l, r);
+                return (double) l >= (double) r;
+            };
+            case LESS -> frame -> {
+                Object l = left.evaluate(frame);
+                Object r = right.evaluate(frame);
+                checkNumberOperands(operator, l, r);
+                return (double) l < (double) r;
+            };
+            default -> frame -> {
+                Object l = left.evaluate(frame);
+                Object r = right.evaluate(frame);
+                checkNumberOperands(operator, l, r);
+                return (double) l <= (double) r;
+            };
+        };
+    }
+
+    /**
+     * Unboxes the left operand of an operator whose right operand is a
+     * number literal, reporting the same error as a two-operand check.
+     */
+    private static double leftNumber(Token operator, Object left) {
+        if (left instanceof Double number) return number;
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    @Override
+    public StmtCode visitBlockStmt(Stmt.Block stmt) {
+        StmtCode[] statements = compile(stmt.statements());
+        int frameSize = stmt.frameSize();
+        return frame -> {
+            Environment inner = new Environment(frame, frameSize);
+            for (StmtCode statement : statements) {
+                statement.execute(inner);
+            }
+        };
+    }
+
+    @Override
+    public StmtCode visitExpressionStmt(Stmt.Expression stmt) {
+        ExprCode expression = compile(stmt.expression());
+        return expression::evaluate;
+    }
+
+    @Override
+    public StmtCode visitFunctionStmt(Stmt.Function stmt) {
+        StmtCode[] statements = compile(stmt.body());
+        StmtCode body = frame -> {
+            for (StmtCode statement : statements) {
+                statement.execute(frame);
+            }
+        };
+        Symbol symbol = stmt.name().symbol();
+        String name = symbol.name();
+        int arity = stmt.params().size();
+        int frameSize = stmt.frameSize();
+        int slot = stmt.slot();
+        if (slot < 0) {
+            return frame -> globals.define(symbol,
+                    new ClosureFunction(name, arity, frameSize, body, frame));
+        }
+        return frame -> frame.define(slot,
+                new ClosureFunction(name, arity, frameSize, body, frame));
+    }
+
+    @Override
+    public StmtCode visitIfStmt(Stmt.If stmt) {
+        Condition condition = compileCondition(stmt.condition());
+        StmtCode thenBranch = compile(stmt.thenBranch());
+        if (stmt.elseBranch() == null) {
+            return frame -> {
+                if (condition.test(frame)) {
+                    thenBranch.execute(frame);
+                }
+            };
+        }
+        StmtCode elseBranch = compile(stmt.elseBranch());
+        return frame -> {
+            if (condition.test(frame)) {
+                thenBranch.execute(frame);
+            } else {
+                elseBranch.execute(frame);
+            }
+        };
+    }
+
+    @Override
+    public StmtCode visitPrintStmt(Stmt.Print stmt) {
+        ExprCode expression = compile(stmt.expression());
+        return frame -> out.println(Values.stringify(expression.evaluate(frame)));
+    }
+
+    @Override
+    public StmtCode visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value() == null) {
+            return frame -> {
+                throw new Return(null);
+            };
+        }
+        ExprCode value = compile(stmt.value());
+        return frame -> {
+            throw new Return(value.evaluate(frame));
+        };
+    }
+
+    @Override
+    public StmtCode visitVarStmt(Stmt.Var stmt) {
+        ExprCode initializer = stmt.initializer() == null ? frame -> null : compile(stmt.initializer());
+        int slot = stmt.slot();
+        if (slot < 0) {
+            Symbol name = stmt.name().symbol();
+            return frame -> globals.define(name, initializer.evaluate(frame));
+        }
+        return frame -> frame.define(slot, initializer.evaluate(frame));
+    }
+
+    @Override
+    public StmtCode visitWhileStmt(Stmt.While stmt) {
+        Condition condition = compileCondition(stmt.condition());
+        StmtCode body = compile(stmt.body());
+        return frame -> {
+            while (condition.test(frame)) {
+                body.execute(frame);
+            }
+        };
+    }
+
+    @Override
+    public ExprCode visitAssignExpr(Expr.Assign expr) {
+        ExprCode value = compile(expr.value());
+        int depth = expr.depth();
+        int slot = expr.slot();
+        if (depth < 0) {
+            Token name = expr.name();
+            GlobalCache cache = new GlobalCache();
+            return frame -> {
+                Object result = value.evaluate(frame);
+                globals.assign(name, result, cache);
+                return result;
+            };
+        }
+        if (depth == 0) {
+            return frame -> {
+                Object result = value.evaluate(frame);
+                frame.define(slot, result);
+                return result;
+            };
+        }
+        return frame -> {
+            Object result = value.evaluate(frame);
+            frame.assignAt(depth, slot, result);
+            return result;
+        };
+    }
+
+    @Override
+    public ExprCode visitBinaryExpr(Expr.Binary expr) {
+        Token operator = expr.operator();
+        Condition comparison = compileComparison(expr);
+        if (comparison != null) {
+            return comparison::test;
+        }
+
+        ExprCode left = compile(expr.left());
+        Double constant = numberLiteral(expr.right());
+        if (constant != null && operator.type() != TokenType.EQUAL_EQUAL
+                && operator.type() != TokenType.BANG_EQUAL) {
+            double right = constant;
+            Double boxedRight = constant;
+            return switch (operator.type()) {
+                case PLUS -> frame -> {
+                    Object l = left.evaluate(frame);
+                    if (l instanceof Double number) return number + right;
+                    return add(operator, l, boxedRight);
+                };
+                case MINUS -> frame -> leftNumber(operator, left.evaluate(frame)) - right;
+                case STAR -> frame -> leftNumber(operator, left.evaluate(frame)) * right;
+                default -> frame -> divide(operator, leftNumber(operator, left.evaluate(frame)), right);
+            };
+        }
+
+        ExprCode right = compile(expr.right());
+        return switch (operator.type()) {
+            case BANG_EQUAL -> frame -> {
+                Object l = left.evaluate(frame);
+                return !Values.isEqual(l, right.evaluate(frame));
+            };
+            case EQUAL_EQUAL -> frame -> {
+                Object l = left.evaluate(frame);
+                return Values.isEqual(l, right.evaluate(frame));
+            };
+            case PLUS -> frame -> {
+                Object l = left.evaluate(frame);
+                Object r = right.evaluate(frame);
+                if (l instanceof Double a && r instanceof Double b) return a + b;
+                return add(operator, l, r);
+            };
+            case MINUS -> frame -> {
+                Object l = left.evaluate(frame);
+                Object r = right.evaluate(frame);
+                checkNumberOperands(operator, l, r);
+                return (double) l - (double) r;
+            };
+            case STAR -> frame -> {
+                Object l = left.evaluate(frame);
+                Object r = right.evaluate(frame);
+                checkNumberOperands(operator, l, r);
+                return (double) l * (double) r;
+            };
+            default -> frame -> {
+                Object l = left.evaluate(frame);
+                Object r = right.evaluate(frame);
+                checkNumberOperands(operator, l, r);
+                return divide(operator, (double) l, (double) r);
+            };
+        };
+    }
+
+    @Override
+    public ExprCode visitCallExpr(Expr.Call expr) {
+        ExprCode callee = compile(expr.callee());
+        ExprCode[] arguments = new ExprCode[expr.arguments().size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = compile(expr.arguments().get(i));
+        }
+        Token paren = expr.paren();
+        return frame -> {
+            Object function = callee.evaluate(frame);
+
+            Object[] values = new Object[arguments.length];
+            for (int i = 0; i < arguments.length; i++) {
+                values[i] = arguments[i].evaluate(frame);
+            }
+            if (!(function instanceof LoxCallable callable)) {
+                throw new RuntimeError(paren,
+                        "Can only call functions and classes.");
+            }
+            if (values.length != callable.arity()) {
+                throw new RuntimeError(paren, "Expected " +
+                        callable.arity() + " arguments but got " +
+                        values.length + ".");
+            }
+
+            if (callable instanceof ClosureFunction closureFunction) {
+                return closureFunction.invoke(values);
+            }
+            try {
+                return callable.call(null, values);
+            } catch (Natives.Failure failure) {
+                throw new RuntimeError(paren, failure.getMessage());
+            }
+        };
+    }
+
+    @Override
+    public ExprCode visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expr());
+    }
+
+    @Override
+    public ExprCode visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value();
+        return frame -> value;
+    }
+
+    @Override
+    public ExprCode visitLogicalExpr(Expr.Logical expr) {
+        ExprCode left = compile(expr.left());
+        ExprCode right = compile(expr.right());
+        if (expr.operator().type() == TokenType.OR) {
+            return frame -> {
+                Object l = left.evaluate(frame);
+                if (Values.isTruthy(l)) return l;
+                return right.evaluate(frame);
+            };
+        }
+        return frame -> {
+            Object l = left.evaluate(frame);
+            if (!Values.isTruthy(l)) return l;
+            return right.evaluate(frame);
+        };
+    }
+
+    @Override
+    public ExprCode visitUnaryExpr(Expr.Unary expr) {
+        ExprCode right = compile(expr.right());
+        Token operator = expr.operator();
+        if (operator.type() == TokenType.MINUS) {
+            return frame -> {
+                Object operand = right.evaluate(frame);
+                checkNumberOperand(operator, operand);
+                return -(double) operand;
+            };
+        }
+        return frame -> !Values.isTruthy(right.evaluate(frame));
+    }
+
+    @Override
+    public ExprCode visitVariableExpr(Expr.Variable expr) {
+        int depth = expr.depth();
+        int slot = expr.slot();
+        if (depth < 0) {
+            Token name = expr.name();
+            GlobalCache cache = new GlobalCache();
+            return frame -> globals.get(name, cache);
+        }
+        return switch (depth) {
+            case 0 -> frame -> frame.get(slot);
+            case 1 -> frame -> frame.enclosing.get(slot);
+            default -> frame -> frame.getAt(depth, slot);
+        };
+    }
+}
@@ -0,0 +1,50 @@
+package com.stahu.lox;
+
+/**
+ * Function value of the closure-compiled backend.
+ */
+class ClosureFunction implements LoxCallable {
+    private final String name;
+    private final int arity;
+    private final int frameSize;
+    private final ClosureCompiler.StmtCode body;
+    private final Environment closure;
+
+    ClosureFunction(String name, int arity, int frameSize, ClosureCompiler.StmtCode body,
+                    Environment closure) {
+        this.name = name;
+        this.arity = arity;
+        this.frameSize = frameSize;
+        this.body = body;
+        this.closure = closure;
+    }
+
+    Object invoke(Object[] arguments) {
+        Environment frame = new Environment(closure, frameSize);
+        for (int i = 0; i < arguments.length; i++) {
+            frame.define(i, arguments[i]);
+        }
+
+        try {
+            body.execute(frame);
+        } catch (Return returnValue) {
+            return returnValue.value;
+        }
+        return null;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        return invoke(arguments);
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
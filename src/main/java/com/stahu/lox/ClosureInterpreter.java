@@ -0,0 +1,35 @@
+package com.stahu.lox;
+
+import com.stahu.lox.error.RuntimeError;
+
+import java.util.List;
+
+/**
+ * Runs programs compiled by {@link ClosureCompiler}. Globals persist between
+ * calls for the REPL.
+ */
+class ClosureInterpreter {
+    final Globals globals = new Globals();
+    private final OutputSink out;
+
+    ClosureInterpreter() {
+        this(Lox.STDOUT);
+    }
+
+    ClosureInterpreter(OutputSink out) {
+        this.out = out;
+        Natives.define(globals);
+    }
+
+    void interpret(List<Stmt> statements) {
+        ClosureCompiler.StmtCode[] program = new ClosureCompiler(globals, out).compile(statements);
+        try {
+            for (ClosureCompiler.StmtCode statement : program) {
+                statement.execute(null);
+            }
+        } catch (RuntimeError error) {
+            out.flush();
+            Lox.runtimeError(error);
+        }
+    }
+}
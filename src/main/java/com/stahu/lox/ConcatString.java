@@ -0,0 +1,65 @@
+package com.stahu.lox;
+
+/**
+ * String value built by {@code +}, so that appending to a long string in a
+ * loop takes time linear in what is appended instead of copying the whole
+ * string each time.
+ * <p>
+ * A value is a prefix of a shared buffer. Appending to the value that owns the
+ * end of its buffer extends the buffer in place and returns a longer prefix;
+ * appending to any other value copies into a fresh buffer. Either way earlier
+ * values still see the same characters. Values are flattened into a
+ * {@link String} on demand, by {@link #toString()}, and the result is kept.
+ */
+final class ConcatString {
+    // Shorter results of + stay plain strings.
+    static final int MIN_LENGTH = 256;
+
+    private final StringBuilder buffer;
+    private final int length;
+    private String flat;
+
+    private ConcatString(StringBuilder buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    /**
+     * Concatenates two string values, each a {@link String} or a
+     * {@code ConcatString}.
+     */
+    static Object concat(Object left, Object right) {
+        String tail = right.toString();
+        if (left instanceof ConcatString prefix) {
+            // Tasks may append to the same value, so the buffer is the lock.
+            synchronized (prefix.buffer) {
+                if (prefix.buffer.length() == prefix.length) {
+                    prefix.buffer.append(tail);
+                    return new ConcatString(prefix.buffer, prefix.buffer.length());
+                }
+            }
+        }
+
+        String head = left.toString();
+        int length = head.length() + tail.length();
+        if (length < MIN_LENGTH) return head + tail;
+        StringBuilder buffer = new StringBuilder(length * 2).append(head).append(tail);
+        return new ConcatString(buffer, length);
+    }
+
+    int length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        String text = flat;
+        if (text == null) {
+            synchronized (buffer) {
+                text = buffer.substring(0, length);
+            }
+            flat = text;
+        }
+        return text;
+    }
+}
@@ -1,47 +1,52 @@
 package com.stahu.lox;
 
-import com.stahu.lox.error.RuntimeError;
-import com.stahu.lox.model.Token;
-
-import java.util.HashMap;
-import java.util.Map;
-
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A single local frame. Slots are numbered by the {@link Resolver}, which also
+ * records how many a block or function body needs, so a frame is one array.
+ * Globals live in {@link Globals}, indexed by symbol id.
+ * <p>
+ * A frame captured by a closure passed to {@code spawn} is shared between
+ * tasks, so variables are written with release and read with acquire
+ * semantics: a task sees values written before whatever it synchronized on,
+ * such as a channel or a join.
+ */
 class Environment {
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Object[].class);
+
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    private final Object[] values;
 
-    Environment() {
-        enclosing = null;
+    Environment(Environment enclosing, int size) {
+        this.enclosing = enclosing;
+        this.values = new Object[size];
+        if (Telemetry.ENABLED) Telemetry.frames.increment();
     }
 
-    Environment(Environment enclosing) {
-        this.enclosing = enclosing;
+    void define(int slot, Object value) {
+        SLOT.setRelease(values, slot, value);
     }
 
-    void define(String name, Object value) {
-        values.put(name, value);
+    Object get(int slot) {
+        return values[slot];
     }
 
-    Object get(Token name) {
-        if (values.containsKey(name.lexeme())) {
-            return values.get(name.lexeme());
+    Environment ancestor(int distance) {
+        Environment environment = this;
+        for (int i = 0; i < distance; i++) {
+            environment = environment.enclosing;
         }
-        if (enclosing != null) {
-            return enclosing.get(name);
-        }
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
+        return environment;
     }
 
-    void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme())) {
-            values.put(name.lexeme(), value);
-            return;
-        }
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
-        }
-        throw new RuntimeError(name,
-                "Undefined variable '" + name.lexeme() + "'.");
+    Object getAt(int distance, int slot) {
+        if (Telemetry.ENABLED) Telemetry.lookup(distance);
+        return SLOT.getAcquire(ancestor(distance).values, slot);
+    }
+
+    void assignAt(int distance, int slot, Object value) {
+        SLOT.setRelease(ancestor(distance).values, slot, value);
     }
 }
@@ -0,0 +1,32 @@
+package com.stahu.lox;
+
+import com.stahu.lox.error.RuntimeError;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps reported errors as {@link LoxError}s instead of printing them.
+ */
+class ErrorCollector implements ErrorReporter {
+    private final List<LoxError> errors = new ArrayList<>();
+
+    @Override
+    public void report(int line, String where, String message) {
+        errors.add(new LoxError(line, "Error" + where + ": " + message));
+    }
+
+    @Override
+    public void runtimeError(RuntimeError error) {
+        if (Telemetry.ENABLED) Telemetry.runtimeError(error.getMessage(), error.line());
+        errors.add(new LoxError(error.line(), error.getMessage()));
+    }
+
+    int size() {
+        return errors.size();
+    }
+
+    List<LoxError> errors() {
+        return List.copyOf(errors);
+    }
+}
@@ -0,0 +1,29 @@
+package com.stahu.lox;
+
+import com.stahu.lox.error.RuntimeError;
+import com.stahu.lox.model.Token;
+import com.stahu.lox.model.TokenType;
+
+/**
+ * Destination for the errors found while scanning, parsing, resolving and
+ * running a script. The command line prints them to stderr through
+ * {@link Lox#CONSOLE}; the embedding API collects them per compile and per
+ * {@link LoxContext}.
+ */
+interface ErrorReporter {
+    void report(int line, String where, String message);
+
+    void runtimeError(RuntimeError error);
+
+    default void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    default void error(Token token, String message) {
+        if (token.type() == TokenType.EOF) {
+            report(token.line(), " at end", message);
+        } else {
+            report(token.line(), " at '" + token.lexeme() + "'", message);
+        }
+    }
+}
@@ -25,7 +25,11 @@ interface Expr {
         }
     }
 
-    record Call(Expr callee, Token paren, List<Expr> arguments) implements Expr {
+    record Call(Expr callee, Token paren, List<Expr> arguments, CallSiteCache cache) implements Expr {
+        Call(Expr callee, Token paren, List<Expr> arguments) {
+            this(callee, paren, arguments, new CallSiteCache());
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitCallExpr(this);
@@ -60,14 +64,30 @@ interface Expr {
         }
     }
 
-    record Variable(Token name) implements Expr {
+    record Variable(Token name, int depth, int slot, GlobalCache cache) implements Expr {
+        Variable(Token name) {
+            this(name, -1, -1);
+        }
+
+        Variable(Token name, int depth, int slot) {
+            this(name, depth, slot, depth < 0 ? new GlobalCache() : null);
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitVariableExpr(this);
         }
     }
 
-    record Assign(Token name, Expr value) implements Expr {
+    record Assign(Token name, Expr value, int depth, int slot, GlobalCache cache) implements Expr {
+        Assign(Token name, Expr value) {
+            this(name, value, -1, -1);
+        }
+
+        Assign(Token name, Expr value, int depth, int slot) {
+            this(name, value, depth, slot, depth < 0 ? new GlobalCache() : null);
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitAssignExpr(this);
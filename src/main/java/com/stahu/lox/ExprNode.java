@@ -0,0 +1,499 @@
+package com.stahu.lox;
+
+import com.stahu.lox.error.RuntimeError;
+import com.stahu.lox.model.Token;
+
+/**
+ * Executable expression node. Besides the generic {@link #execute} every node
+ * offers typed entry points; specialized nodes implement them without boxing
+ * and rewrite themselves to a generic variant once an operand stops having
+ * the type they were specialized for.
+ */
+abstract class ExprNode extends Node {
+
+    abstract Object execute(Environment frame);
+
+    double executeDouble(Environment frame) throws UnexpectedResultException {
+        Object value = execute(frame);
+        if (value instanceof Double number) return number;
+        throw new UnexpectedResultException(value);
+    }
+
+    boolean executeCondition(Environment frame) {
+        return Values.isTruthy(execute(frame));
+    }
+
+    static final class NumberLiteral extends ExprNode {
+        private final double value;
+        private final Double boxed;
+
+        NumberLiteral(double value) {
+            this.value = value;
+            this.boxed = value;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return boxed;
+        }
+
+        @Override
+        double executeDouble(Environment frame) {
+            return value;
+        }
+    }
+
+    static final class Literal extends ExprNode {
+        private final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return value;
+        }
+    }
+
+    static final class LocalRead extends ExprNode {
+        private final int depth;
+        private final int slot;
+
+        LocalRead(int depth, int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return frame.getAt(depth, slot);
+        }
+    }
+
+    static final class GlobalRead extends ExprNode {
+        private final Globals globals;
+        private final Token name;
+        private final GlobalCache cache = new GlobalCache();
+
+        GlobalRead(Globals globals, Token name) {
+            this.globals = globals;
+            this.name = name;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return globals.get(name, cache);
+        }
+    }
+
+    static final class LocalAssign extends ExprNode {
+        private final int depth;
+        private final int slot;
+        private ExprNode value;
+
+        LocalAssign(int depth, int slot, ExprNode value) {
+            this.depth = depth;
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object result = value.execute(frame);
+            frame.assignAt(depth, slot, result);
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            value = (ExprNode) replacement;
+        }
+    }
+
+    static final class GlobalAssign extends ExprNode {
+        private final Globals globals;
+        private final Token name;
+        private final GlobalCache cache = new GlobalCache();
+        private ExprNode value;
+
+        GlobalAssign(Globals globals, Token name, ExprNode value) {
+            this.globals = globals;
+            this.name = name;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object result = value.execute(frame);
+            globals.assign(name, result, cache);
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            value = (ExprNode) replacement;
+        }
+    }
+
+    abstract static class Binary extends ExprNode {
+        ExprNode left;
+        ExprNode right;
+        final Token operator;
+
+        Binary(ExprNode left, Token operator, ExprNode right) {
+            this.left = adopt(left);
+            this.operator = operator;
+            this.right = adopt(right);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (left == child) {
+                left = (ExprNode) replacement;
+            } else if (right == child) {
+                right = (ExprNode) replacement;
+            }
+        }
+
+        /**
+         * Rewrites this node to {@link GenericBinary} and applies the operator
+         * to operands that were already evaluated.
+         */
+        Object generalize(Object leftValue, Object rightValue) {
+            return replace(new GenericBinary(left, operator, right)).apply(leftValue, rightValue);
+        }
+    }
+
+    /**
+     * A binary node that has not run yet. On first execution it picks a
+     * specialization from the operand types it sees.
+     */
+    static final class UninitializedBinary extends Binary {
+
+        UninitializedBinary(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object leftValue = left.execute(frame);
+            Object rightValue = right.execute(frame);
+
+            Binary specialized;
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                specialized = switch (operator.type()) {
+                    case MINUS, PLUS, SLASH, STAR -> new NumberArithmetic(left, operator, right);
+                    case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL -> new NumberComparison(left, operator, right);
+                    default -> new GenericBinary(left, operator, right);
+                };
+            } else {
+                specialized = new GenericBinary(left, operator, right);
+            }
+            replace(specialized);
+            return GenericBinary.apply(operator, leftValue, rightValue);
+        }
+    }
+
+    static final class NumberArithmetic extends Binary {
+
+        NumberArithmetic(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            try {
+                return executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        double executeDouble(Environment frame) throws UnexpectedResultException {
+            double leftValue;
+            try {
+                leftValue = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return expectDouble(generalize(e.result, right.execute(frame)));
+            }
+            double rightValue;
+            try {
+                rightValue = right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return expectDouble(generalize(leftValue, e.result));
+            }
+
+            switch (operator.type()) {
+                case MINUS: return leftValue - rightValue;
+                case PLUS: return leftValue + rightValue;
+                case STAR: return leftValue * rightValue;
+                case SLASH:
+                    if (rightValue == (double) 0) {
+                        throw new RuntimeError(operator, "Division by zero.");
+                    }
+                    return leftValue / rightValue;
+                default:
+                    // Unreachable.
+                    throw new IllegalStateException();
+            }
+        }
+
+        private static double expectDouble(Object value) throws UnexpectedResultException {
+            if (value instanceof Double number) return number;
+            throw new UnexpectedResultException(value);
+        }
+    }
+
+    static final class NumberComparison extends Binary {
+
+        NumberComparison(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return executeCondition(frame);
+        }
+
+        @Override
+        boolean executeCondition(Environment frame) {
+            double leftValue;
+            try {
+                leftValue = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return Values.isTruthy(generalize(e.result, right.execute(frame)));
+            }
+            double rightValue;
+            try {
+                rightValue = right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return Values.isTruthy(generalize(leftValue, e.result));
+            }
+
+            return switch (operator.type()) {
+                case GREATER -> leftValue > rightValue;
+                case GREATER_EQUAL -> leftValue >= rightValue;
+                case LESS -> leftValue < rightValue;
+                case LESS_EQUAL -> leftValue <= rightValue;
+                default -> throw new IllegalStateException();
+            };
+        }
+    }
+
+    static final class GenericBinary extends Binary {
+
+        GenericBinary(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object leftValue = left.execute(frame);
+            Object rightValue = right.execute(frame);
+            return apply(operator, leftValue, rightValue);
+        }
+
+        Object apply(Object leftValue, Object rightValue) {
+            return apply(operator, leftValue, rightValue);
+        }
+
+        static Object apply(Token operator, Object left, Object right) {
+            switch (operator.type()) {
+                case BANG_EQUAL: return !Values.isEqual(left, right);
+                case EQUAL_EQUAL: return Values.isEqual(left, right);
+                case PLUS:
+                    Object sum = Values.add(left, right);
+                    if (sum == null) {
+                        throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+                    }
+                    return sum;
+                default:
+                    break;
+            }
+
+            checkNumberOperands(operator, left, right);
+            double leftValue = (double) left;
+            double rightValue = (double) right;
+            switch (operator.type()) {
+                case GREATER: return leftValue > rightValue;
+                case GREATER_EQUAL: return leftValue >= rightValue;
+                case LESS: return leftValue < rightValue;
+                case LESS_EQUAL: return leftValue <= rightValue;
+                case MINUS: return leftValue - rightValue;
+                case SLASH:
+                    if (rightValue == (double) 0) {
+                        throw new RuntimeError(operator, "Division by zero.");
+                    }
+                    return leftValue / rightValue;
+                case STAR: return leftValue * rightValue;
+                default:
+                    // Unreachable.
+                    return null;
+            }
+        }
+
+        private static void checkNumberOperands(Token operator, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) return;
+            throw new RuntimeError(operator, "Operands must be numbers.");
+        }
+    }
+
+    static final class Negate extends ExprNode {
+        private ExprNode operand;
+        private final Token operator;
+
+        Negate(Token operator, ExprNode operand) {
+            this.operator = operator;
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return executeDouble(frame);
+        }
+
+        @Override
+        double executeDouble(Environment frame) {
+            try {
+                return -operand.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                throw new RuntimeError(operator, "Operand must be a number.");
+            }
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            operand = (ExprNode) replacement;
+        }
+    }
+
+    static final class Not extends ExprNode {
+        private ExprNode operand;
+
+        Not(ExprNode operand) {
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return executeCondition(frame);
+        }
+
+        @Override
+        boolean executeCondition(Environment frame) {
+            return !operand.executeCondition(frame);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            operand = (ExprNode) replacement;
+        }
+    }
+
+    static final class Logical extends ExprNode {
+        private ExprNode left;
+        private ExprNode right;
+        private final boolean isOr;
+
+        Logical(ExprNode left, boolean isOr, ExprNode right) {
+            this.left = adopt(left);
+            this.isOr = isOr;
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object leftValue = left.execute(frame);
+
+            if (isOr) {
+                if (Values.isTruthy(leftValue)) return leftValue;
+            } else {
+                if (!Values.isTruthy(leftValue)) return leftValue;
+            }
+            return right.execute(frame);
+        }
+
+        @Override
+        boolean executeCondition(Environment frame) {
+            if (isOr) {
+                return left.executeCondition(frame) || right.executeCondition(frame);
+            }
+            return left.executeCondition(frame) && right.executeCondition(frame);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (left == child) {
+                left = (ExprNode) replacement;
+            } else if (right == child) {
+                right = (ExprNode) replacement;
+            }
+        }
+    }
+
+    static final class Call extends ExprNode {
+        private ExprNode callee;
+        private final ExprNode[] arguments;
+        private final Token paren;
+        private final CallSiteCache cache = new CallSiteCache();
+
+        Call(ExprNode callee, Token paren, ExprNode[] arguments) {
+            this.callee = adopt(callee);
+            this.paren = paren;
+            this.arguments = arguments;
+            for (ExprNode argument : arguments) {
+                adopt(argument);
+            }
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object function = callee.execute(frame);
+            if (function instanceof NodeFunction nodeFunction && nodeFunction.arity() == arguments.length) {
+                Environment calleeFrame = nodeFunction.newFrame();
+                for (int i = 0; i < arguments.length; i++) {
+                    calleeFrame.define(i, arguments[i].execute(frame));
+                }
+                return nodeFunction.invoke(calleeFrame);
+            }
+
+            Object[] values = new Object[arguments.length];
+            for (int i = 0; i < arguments.length; i++) {
+                values[i] = arguments[i].execute(frame);
+            }
+            if (!cache.contains(function)) {
+                if (!(function instanceof LoxCallable callable)) {
+                    throw new RuntimeError(paren,
+                            "Can only call functions and classes.");
+                }
+                if (values.length != callable.arity()) {
+                    throw new RuntimeError(paren, "Expected " +
+                            callable.arity() + " arguments but got " +
+                            values.length + ".");
+                }
+                cache.add(callable);
+            }
+            try {
+                return ((LoxCallable) function).call(null, values);
+            } catch (Natives.Failure failure) {
+                throw new RuntimeError(paren, failure.getMessage());
+            }
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (callee == child) {
+                callee = (ExprNode) replacement;
+                return;
+            }
+            for (int i = 0; i < arguments.length; i++) {
+                if (arguments[i] == child) {
+                    arguments[i] = (ExprNode) replacement;
+                    return;
+                }
+            }
+        }
+    }
+}
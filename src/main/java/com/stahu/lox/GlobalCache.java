@@ -0,0 +1,9 @@
+package com.stahu.lox;
+
+/**
+ * Inline cache of a global variable read or write site: the cell the name
+ * resolved to. Holding a single reference keeps updates safe to race.
+ */
+final class GlobalCache {
+    Globals.Cell cell;
+}
@@ -0,0 +1,118 @@
+package com.stahu.lox;
+
+import com.stahu.lox.error.RuntimeError;
+import com.stahu.lox.model.Symbol;
+import com.stahu.lox.model.Token;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Global variables, indexed by {@link Symbol#id()}. Each name owns one
+ * {@link Cell} for the lifetime of the table; redefining a global writes the
+ * existing cell, so a {@link GlobalCache} holding a cell never has to be
+ * invalidated. The cell keeps its symbol alive, so the id cannot be given to
+ * another name while the global exists.
+ * <p>
+ * Spawned tasks share their parent's globals. Cells are volatile, and new
+ * cells are published with release stores, so readers never lock.
+ */
+class Globals {
+
+    static final class Cell {
+        final Globals owner;
+        final Symbol name;
+        volatile Object value;
+
+        private Cell(Globals owner, Symbol name, Object value) {
+            this.owner = owner;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    private static final VarHandle CELL = MethodHandles.arrayElementVarHandle(Cell[].class);
+
+    private volatile Cell[] cells = new Cell[64];
+
+    void define(String name, Object value) {
+        define(Symbol.intern(name), value);
+    }
+
+    void define(Symbol name, Object value) {
+        Cell cell = find(name);
+        if (cell != null) {
+            cell.value = value;
+            return;
+        }
+
+        synchronized (this) {
+            cell = find(name);
+            if (cell != null) {
+                cell.value = value;
+                return;
+            }
+            Cell[] current = cells;
+            int id = name.id();
+            if (id >= current.length) {
+                current = Arrays.copyOf(current, Integer.highestOneBit(id) * 2);
+                cells = current;
+            }
+            CELL.setRelease(current, id, new Cell(this, name, value));
+        }
+    }
+
+    Object get(Token name) {
+        return cell(name.symbol(), name.line()).value;
+    }
+
+    Object get(Symbol name, int line) {
+        if (Telemetry.ENABLED) Telemetry.lookups.increment();
+        return cell(name, line).value;
+    }
+
+    /**
+     * Reads a global through a per-site cache, filling it on the first
+     * successful lookup.
+     */
+    Object get(Token name, GlobalCache cache) {
+        if (Telemetry.ENABLED) Telemetry.lookups.increment();
+        return cachedCell(name, cache).value;
+    }
+
+    void assign(Token name, Object value) {
+        cell(name.symbol(), name.line()).value = value;
+    }
+
+    void assign(Symbol name, int line, Object value) {
+        cell(name, line).value = value;
+    }
+
+    void assign(Token name, Object value, GlobalCache cache) {
+        cachedCell(name, cache).value = value;
+    }
+
+    private Cell cachedCell(Token name, GlobalCache cache) {
+        Cell cell = cache.cell;
+        if (cell == null || cell.owner != this) {
+            cell = cell(name.symbol(), name.line());
+            cache.cell = cell;
+        }
+        return cell;
+    }
+
+    private Cell find(Symbol name) {
+        Cell[] current = cells;
+        int id = name.id();
+        return id < current.length ? (Cell) CELL.getAcquire(current, id) : null;
+    }
+
+    private Cell cell(Symbol name, int line) {
+        Cell cell = find(name);
+        if (cell == null) {
+            throw new RuntimeError(line, "Undefined variable '" + name.name() + "'.");
+        }
+        return cell;
+    }
+}
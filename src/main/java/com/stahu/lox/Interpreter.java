@@ -4,30 +4,80 @@ import com.stahu.lox.error.RuntimeError;
 import com.stahu.lox.model.Token;
 import com.stahu.lox.model.TokenType;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Interpreter.Completion> {
+
+    /**
+     * How a statement finished. A {@code return} leaves its value in
+     * {@link #returnValue} and propagates {@code RETURN} up to the call,
+     * instead of unwinding the Java stack with an exception. A {@code return}
+     * whose value is a call to a Lox function completes with
+     * {@code TAIL_CALL} instead, leaving the callee and its filled frame for
+     * {@link LoxFunction#call} to run in place of the current call.
+     */
+    enum Completion {
+        NORMAL,
+        RETURN,
+        TAIL_CALL
+    }
+
+    final Globals globals;
+    private Environment environment = null;
+    private Object returnValue = null;
+    private LoxFunction tailCallee = null;
+    private Environment tailFrame = null;
+    // Set when running under --profile.
+    Profiler profiler = null;
 
-class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    final Environment globals = new Environment();
-    private Environment environment = globals;
+    private final OutputSink out;
+    private final ErrorReporter reporter;
+    // Shared with forked interpreters, so cancelling also stops spawned
+    // tasks. Compiled code polls it too.
+    final AtomicBoolean cancelled;
 
     Interpreter() {
-        globals.define("clock", new LoxCallable() {
-            @Override
-            public int arity() {
-                return 0;
-            }
+        this(Lox.STDOUT, Lox.CONSOLE);
+    }
 
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return System.currentTimeMillis() / 1000.0;
-            }
+    Interpreter(OutputSink out, ErrorReporter reporter) {
+        this.globals = new Globals();
+        this.out = out;
+        this.reporter = reporter;
+        this.cancelled = new AtomicBoolean();
+        Natives.define(globals);
+        Natives.defineConcurrency(globals);
+    }
 
-            @Override
-            public String toString() {
-                return "<native fn>";
-            }
-        });
+    private Interpreter(Interpreter parent) {
+        this.globals = parent.globals;
+        this.out = parent.out;
+        this.reporter = parent.reporter;
+        this.cancelled = parent.cancelled;
+    }
+
+    /**
+     * Returns an interpreter for a spawned task. It shares this one's
+     * globals and output but keeps its own current environment and pending
+     * return, and is not profiled.
+     */
+    Interpreter fork() {
+        return new Interpreter(this);
+    }
+
+    /**
+     * Asks this interpreter and every one forked from it to stop. Loops and
+     * calls notice it and throw {@link CancellationException}; it cannot be
+     * undone.
+     */
+    void cancel() {
+        cancelled.set(true);
+    }
+
+    void checkCancelled() {
+        if (cancelled.get()) throw new CancellationException();
     }
 
     void interpret(List<Stmt> statements) {
@@ -36,7 +86,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 execute(statement);
             }
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            out.flush();
+            reporter.runtimeError(error);
         }
     }
 
@@ -44,10 +95,11 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitBinaryExpr(Expr.Binary expression) {
         Object left = evaluate(expression.left());
         Object right = evaluate(expression.right());
+        mark(expression.operator());
 
         switch (expression.operator().type()) {
-            case BANG_EQUAL: return !isEqual(left, right);
-            case EQUAL_EQUAL: return isEqual(left, right);
+            case BANG_EQUAL: return !Values.isEqual(left, right);
+            case EQUAL_EQUAL: return Values.isEqual(left, right);
             case GREATER:
                 checkNumberOperands(expression.operator(), left, right);
                 return (double)left > (double)right;
@@ -64,25 +116,11 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 checkNumberOperands(expression.operator(), left, right);
                 return (double)left - (double)right;
             case PLUS:
-                if (left instanceof Double && right instanceof Double) {
-                    return (double)left + (double)right;
-                }
-                if (left instanceof String sLeft && right instanceof String sRight) {
-                    return sLeft + sRight;
-                }
-                if (left instanceof Double && right instanceof String) {
-                    Object temp = left;
-                    left = right;
-                    right = temp;
-                }
-                if (left instanceof String sLeft && right instanceof Double dRight) {
-                    double sum = 0;
-                    for (char c : sLeft.toCharArray()) {
-                        sum += c;
-                    }
-                    return sum + dRight;
+                Object sum = Values.add(left, right);
+                if (sum == null) {
+                    throw new RuntimeError(expression.operator(), "Operands must be two numbers or two strings.");
                 }
-                throw new RuntimeError(expression.operator(), "Operands must be two numbers or two strings.");
+                return sum;
             case SLASH:
                 checkNumberOperands(expression.operator(), left, right);
                 if ((double)right == (double) 0) {
@@ -101,10 +139,96 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitCallExpr(Expr.Call expr) {
         Object callee = evaluate(expr.callee());
+        if (callee instanceof LoxFunction function && isChecked(expr, function)) {
+            Environment frame = evaluateArguments(expr, function);
+            mark(expr.paren());
+            return function.call(this, frame);
+        }
+        return callOther(expr, callee);
+    }
+
+    /**
+     * Returns whether {@code function} takes as many arguments as the call
+     * passes, consulting and filling the call site's cache.
+     */
+    private boolean isChecked(Expr.Call expr, LoxFunction function) {
+        CallSiteCache cache = expr.cache();
+        if (cache.contains(function.declaration())) return true;
+        if (function.arity() != expr.arguments().size()) return false;
+        cache.add(function.declaration());
+        return true;
+    }
+
+    /**
+     * Evaluates the arguments of a call straight into a new frame of the
+     * function being called.
+     */
+    private Environment evaluateArguments(Expr.Call expr, LoxFunction function) {
+        Environment frame = function.newFrame();
+        List<Expr> arguments = expr.arguments();
+        for (int i = 0; i < arguments.size(); i++) {
+            frame.define(i, evaluate(arguments.get(i)));
+        }
+        return frame;
+    }
+
+    /**
+     * Calls anything but a Lox function of the right arity, through the
+     * fixed-arity entry points for up to four arguments. Reports an
+     * uncallable callee or a wrong argument count once the arguments have
+     * been evaluated.
+     */
+    private Object callOther(Expr.Call expr, Object callee) {
+        List<Expr> arguments = expr.arguments();
+        try {
+            switch (arguments.size()) {
+                case 0: {
+                    mark(expr.paren());
+                    return checkCallable(expr, callee, 0).call0(this);
+                }
+                case 1: {
+                    Object a = evaluate(arguments.get(0));
+                    mark(expr.paren());
+                    return checkCallable(expr, callee, 1).call1(this, a);
+                }
+                case 2: {
+                    Object a = evaluate(arguments.get(0));
+                    Object b = evaluate(arguments.get(1));
+                    mark(expr.paren());
+                    return checkCallable(expr, callee, 2).call2(this, a, b);
+                }
+                case 3: {
+                    Object a = evaluate(arguments.get(0));
+                    Object b = evaluate(arguments.get(1));
+                    Object c = evaluate(arguments.get(2));
+                    mark(expr.paren());
+                    return checkCallable(expr, callee, 3).call3(this, a, b, c);
+                }
+                case 4: {
+                    Object a = evaluate(arguments.get(0));
+                    Object b = evaluate(arguments.get(1));
+                    Object c = evaluate(arguments.get(2));
+                    Object d = evaluate(arguments.get(3));
+                    mark(expr.paren());
+                    return checkCallable(expr, callee, 4).call4(this, a, b, c, d);
+                }
+                default: {
+                    Object[] values = new Object[arguments.size()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = evaluate(arguments.get(i));
+                    }
+                    mark(expr.paren());
+                    return checkCallable(expr, callee, values.length).call(this, values);
+                }
+            }
+        } catch (Natives.Failure failure) {
+            throw new RuntimeError(expr.paren(), failure.getMessage());
+        }
+    }
 
-        List<Object> arguments = new ArrayList<>();
-        for (Expr argument : expr.arguments()) {
-            arguments.add(evaluate(argument));
+    private LoxCallable checkCallable(Expr.Call expr, Object callee, int argumentCount) {
+        if (expr.cache().contains(callee)) {
+            return (LoxCallable) callee;
         }
         if (!(callee instanceof LoxCallable)) {
             throw new RuntimeError(expr.paren(),
@@ -112,12 +236,13 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
 
         LoxCallable function = (LoxCallable) callee;
-        if (arguments.size() != function.arity()) {
+        if (argumentCount != function.arity()) {
             throw new RuntimeError(expr.paren(), "Expected " +
                     function.arity() + " arguments but got " +
-                    arguments.size() + ".");
+                    argumentCount + ".");
         }
-        return function.call(this, arguments);
+        expr.cache().add(function);
+        return function;
     }
 
     @Override
@@ -135,9 +260,9 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         Object left = evaluate(expr.left());
 
         if (expr.operator().type() == TokenType.OR) {
-            if (isTruthy(left)) return left;
+            if (Values.isTruthy(left)) return left;
         } else {
-            if (!isTruthy(left)) return left;
+            if (!Values.isTruthy(left)) return left;
         }
         return evaluate(expr.right());
     }
@@ -147,7 +272,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         Object right = evaluate(expression.right());
 
         return switch (expression.operator().type()) {
-            case BANG -> !isTruthy(right);
+            case BANG -> !Values.isTruthy(right);
             case MINUS -> {
                 checkNumberOperand(expression.operator(), right);
                 yield -(double) right;}
@@ -159,7 +284,10 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return environment.get(expr.name());
+        if (expr.depth() < 0) {
+            return globals.get(expr.name(), expr.cache());
+        }
+        return environment.getAt(expr.depth(), expr.slot());
     }
 
     private void checkNumberOperand(Token operator, Object operand) {
@@ -172,122 +300,156 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
-    private boolean isTruthy(Object object) {
-        if (object == null) return false;
-        if (object instanceof Boolean bool) return bool;
-        return true;
-    }
-
-    private boolean isEqual(Object a, Object b) {
-        if (a == null && b == null) return true;
-        if (a == null) return false;
-
-        return a.equals(b);
-    }
-
-    private String stringify(Object object) {
-        if (object == null) return "nil";
-
-        if (object instanceof Double) {
-            String text = object.toString();
-            if (text.endsWith(".0")) {
-                text = text.substring(0, text.length() - 2);
-            }
-            return text;
-        }
-        return object.toString();
+    /**
+     * Records the line being run for the profiler.
+     */
+    private void mark(Token token) {
+        if (profiler != null) profiler.line(token.line());
     }
 
     private Object evaluate(Expr expr) {
         return expr.accept(this);
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    private Completion execute(Stmt stmt) {
+        if (Telemetry.ENABLED) Telemetry.statements.increment();
+        return stmt.accept(this);
     }
 
-    void executeBlock(List<Stmt> statements, Environment environment) {
+    Completion executeBlock(List<Stmt> statements, Environment environment) {
         Environment previous = this.environment;
         try {
             this.environment = environment;
 
             for (Stmt statement : statements) {
-                execute(statement);
+                Completion completion = execute(statement);
+                if (completion != Completion.NORMAL) return completion;
             }
+            return Completion.NORMAL;
         } finally {
             this.environment = previous;
         }
     }
 
+    /**
+     * Hands the value of the {@code return} that completed the current call
+     * to the caller, clearing it so the interpreter does not keep it alive.
+     */
+    Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
+    }
+
+    LoxFunction takeTailCallee() {
+        LoxFunction callee = tailCallee;
+        tailCallee = null;
+        return callee;
+    }
+
+    Environment takeTailFrame() {
+        Environment frame = tailFrame;
+        tailFrame = null;
+        return frame;
+    }
+
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements(), new Environment(environment));
-        return null;
+    public Completion visitBlockStmt(Stmt.Block stmt) {
+        return executeBlock(stmt.statements(), new Environment(environment, stmt.frameSize()));
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Completion visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expression());
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
+    public Completion visitFunctionStmt(Stmt.Function stmt) {
         LoxFunction function = new LoxFunction(stmt, environment);
-        environment.define(stmt.name().lexeme(), function);
-        return null;
+        define(stmt.name(), stmt.slot(), function);
+        return Completion.NORMAL;
     }
 
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
-        if (isTruthy(evaluate(stmt.condition()))) {
-            execute(stmt.thenBranch());
+    public Completion visitIfStmt(Stmt.If stmt) {
+        if (Values.isTruthy(evaluate(stmt.condition()))) {
+            return execute(stmt.thenBranch());
         } else if (stmt.elseBranch() != null) {
-            execute(stmt.elseBranch());
+            return execute(stmt.elseBranch());
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Completion visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression());
-        System.out.println(stringify(value));
-        return null;
+        out.println(Values.stringify(value));
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
+    public Completion visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value() instanceof Expr.Call call) {
+            Object callee = evaluate(call.callee());
+            if (callee instanceof LoxFunction function && function.arity() == call.arguments().size()) {
+                tailFrame = evaluateArguments(call, function);
+                tailCallee = function;
+                mark(stmt.keyword());
+                return Completion.TAIL_CALL;
+            }
+            returnValue = callOther(call, callee);
+            return Completion.RETURN;
+        }
+
         Object value = null;
         if (stmt.value() != null) {
             value = evaluate(stmt.value());
         }
 
-        throw new Return(value);
+        returnValue = value;
+        return Completion.RETURN;
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Completion visitVarStmt(Stmt.Var stmt) {
         Object value = null;
         if (stmt.initializer() != null) {
             value = evaluate(stmt.initializer());
         }
-        environment.define(stmt.name().lexeme(), value);
-        return null;
+        mark(stmt.name());
+        define(stmt.name(), stmt.slot(), value);
+        return Completion.NORMAL;
+    }
+
+    private void define(Token name, int slot, Object value) {
+        if (slot < 0) {
+            globals.define(name.symbol(), value);
+        } else {
+            environment.define(slot, value);
+        }
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
-        while (isTruthy(evaluate(stmt.condition()))) {
-            execute(stmt.body());
+    public Completion visitWhileStmt(Stmt.While stmt) {
+        while (Values.isTruthy(evaluate(stmt.condition()))) {
+            checkCancelled();
+            Completion completion = execute(stmt.body());
+            if (completion != Completion.NORMAL) return completion;
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value());
-        environment.assign(expr.name(), value);
+        mark(expr.name());
+        if (expr.depth() < 0) {
+            globals.assign(expr.name(), value, expr.cache());
+        } else {
+            environment.assignAt(expr.depth(), expr.slot(), value);
+        }
         return value;
     }
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.stahu.lox;
+
+class InterpreterStats implements InterpreterStatsMBean {
+    @Override
+    public long getStatementsExecuted() {
+        return Telemetry.statements.sum();
+    }
+
+    @Override
+    public long getFramesAllocated() {
+        return Telemetry.frames.sum();
+    }
+
+    @Override
+    public long getVariableLookups() {
+        return Telemetry.lookups.sum();
+    }
+
+    @Override
+    public long getChainDepthWalked() {
+        return Telemetry.depthWalked.sum();
+    }
+
+    @Override
+    public long[] getCallsByArity() {
+        long[] calls = new long[Telemetry.callsByArity.length];
+        for (int i = 0; i < calls.length; i++) {
+            calls[i] = Telemetry.callsByArity[i].sum();
+        }
+        return calls;
+    }
+}
@@ -0,0 +1,27 @@
+package com.stahu.lox;
+
+/**
+ * Interpreter counters published over JMX when telemetry is enabled. See
+ * {@link Telemetry}.
+ */
+public interface InterpreterStatsMBean {
+    long getStatementsExecuted();
+
+    long getFramesAllocated();
+
+    /**
+     * Reads of local and global variables.
+     */
+    long getVariableLookups();
+
+    /**
+     * Total number of enclosing frames walked by local variable lookups.
+     */
+    long getChainDepthWalked();
+
+    /**
+     * Calls to Lox functions, indexed by arity. The last entry counts every
+     * arity from {@link Telemetry#MAX_ARITY} up.
+     */
+    long[] getCallsByArity();
+}
@@ -0,0 +1,517 @@
+package com.stahu.lox;
+
+import com.stahu.lox.model.Token;
+import com.stahu.lox.model.TokenType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Compiles hot {@link LoxFunction}s to JVM bytecode loaded as hidden classes.
+ *
+ * <p>Only numeric kernels are compiled: functions whose parameters and locals
+ * are all numbers and whose body uses arithmetic, comparisons, control flow,
+ * local variables and calls to itself, and that always end in a
+ * {@code return}. Such a body has no side effects beyond its own frame, so
+ * whenever compiled code meets something it cannot handle (a non-number
+ * argument, division by zero) it throws {@link Deoptimization} and the caller
+ * simply re-runs the whole call in the tree-walking {@link Interpreter}, which
+ * produces the exact Lox result or error.
+ *
+ * <p>The compiled method takes the interpreter's cancellation flag ahead of
+ * the arguments and polls it on entry, which every self-call and tail call
+ * passes through, and on each loop iteration. Once it is set the code
+ * deoptimizes, and the interpreter notices the cancellation itself.
+ */
+final class JitCompiler {
+    /** Invocations before a function is compiled; zero or less disables the JIT. */
+    static final int THRESHOLD = Integer.getInteger("lox.jit.threshold", 1000);
+
+    private static final String CLASS_NAME = "com/stahu/lox/JitCode";
+    private static final String METHOD_NAME = "run";
+    private static final String RUNTIME_CLASS = "com/stahu/lox/JitCompiler";
+    private static final String FLAG_CLASS = "java/util/concurrent/atomic/AtomicBoolean";
+
+    static final class Deoptimization extends RuntimeException {
+        private Deoptimization() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Deoptimization DEOPTIMIZATION = new Deoptimization();
+
+    /**
+     * Compiled code of a function. {@code handle} takes the cancellation flag
+     * and the arguments as an {@code Object[]} of {@link Double}s and returns
+     * a {@link Double}.
+     * When {@code selfCalls} is set the code calls itself directly, which is
+     * only valid while the function's global name is still bound to it.
+     */
+    record Compiled(MethodHandle handle, boolean selfCalls) {
+        Object invoke(AtomicBoolean cancelled, Object[] arguments) {
+            try {
+                return (Object) handle.invokeExact(cancelled, arguments);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /** Called from compiled code; the result is thrown there. */
+    static RuntimeException deoptimize() {
+        return DEOPTIMIZATION;
+    }
+
+    private static final class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class Label {
+        int position = -1;
+        final List<Integer> branches = new ArrayList<>();
+    }
+
+    // JVM opcodes used by the generated code.
+    private static final int DCONST_0 = 0x0e;
+    private static final int DCONST_1 = 0x0f;
+    private static final int LDC2_W = 0x14;
+    private static final int DLOAD = 0x18;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int DSTORE = 0x39;
+    private static final int POP2 = 0x58;
+    private static final int DUP2 = 0x5c;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DDIV = 0x6f;
+    private static final int DNEG = 0x77;
+    private static final int DCMPL = 0x97;
+    private static final int DCMPG = 0x98;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IFLT = 0x9b;
+    private static final int IFGE = 0x9c;
+    private static final int IFGT = 0x9d;
+    private static final int IFLE = 0x9e;
+    private static final int GOTO = 0xa7;
+    private static final int DRETURN = 0xaf;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int ATHROW = 0xbf;
+    private static final int WIDE = 0xc4;
+
+    private final Stmt.Function function;
+    private final JvmClassWriter classWriter = new JvmClassWriter(CLASS_NAME);
+    private final String descriptor;
+    private byte[] code = new byte[256];
+    private int length = 0;
+    private int stack = 0;
+    private int maxStack = 0;
+    private final List<Integer> scopes = new ArrayList<>();
+    private int nextLocal;
+    private int maxLocals;
+    private boolean selfCalls = false;
+    private final Label start = new Label();
+
+    private JitCompiler(Stmt.Function function) {
+        this.function = function;
+        this.descriptor = "(L" + FLAG_CLASS + ";" + "D".repeat(function.params().size()) + ")D";
+    }
+
+    /**
+     * Compiles the function, or returns {@code null} if its body is outside
+     * the supported subset.
+     */
+    static Compiled compile(Stmt.Function function) {
+        try {
+            return new JitCompiler(function).compile();
+        } catch (Unsupported | ReflectiveOperationException | LinkageError | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private Compiled compile() throws ReflectiveOperationException {
+        // Falling off the end returns nil, which compiled code cannot, and
+        // deoptimizing there would have every call run the body twice.
+        if (completesNormally(function.body())) throw new Unsupported();
+
+        // Local 0 holds the cancellation flag; the frame's numbers follow it.
+        scopes.add(1);
+        place(start);
+        pollCancellation();
+        nextLocal = 1 + function.frameSize() * 2;
+        maxLocals = nextLocal;
+        for (Stmt statement : function.body()) {
+            statement(statement);
+        }
+        // Unreachable, but the verifier needs code after a trailing jump.
+        deoptimizeHere();
+
+        if (length > 0xFFFF) throw new Unsupported();
+        byte[] bytes = classWriter.toByteArray(METHOD_NAME, descriptor, code, length, maxStack, maxLocals);
+        MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+        int arity = function.params().size();
+        MethodType type = MethodType.methodType(double.class, Collections.nCopies(arity, double.class))
+                .insertParameterTypes(0, AtomicBoolean.class);
+        MethodHandle handle = lookup.findStatic(lookup.lookupClass(), METHOD_NAME, type)
+                .asType(MethodType.genericMethodType(arity).insertParameterTypes(0, AtomicBoolean.class))
+                .asSpreader(Object[].class, arity);
+        return new Compiled(handle, selfCalls);
+    }
+
+    private void statement(Stmt stmt) {
+        if (stmt instanceof Stmt.Expression expression) {
+            if (expression.expression() instanceof Expr.Assign assign && assign.depth() >= 0) {
+                number(assign.value());
+                store(local(assign.depth(), assign.slot()));
+            } else {
+                number(expression.expression());
+                emit(POP2, -2);
+            }
+        } else if (stmt instanceof Stmt.Var var) {
+            if (var.initializer() == null || var.slot() < 0) throw new Unsupported();
+            number(var.initializer());
+            store(local(0, var.slot()));
+        } else if (stmt instanceof Stmt.Block block) {
+            scopes.add(nextLocal);
+            int saved = nextLocal;
+            nextLocal += block.frameSize() * 2;
+            maxLocals = Math.max(maxLocals, nextLocal);
+            for (Stmt statement : block.statements()) {
+                statement(statement);
+            }
+            nextLocal = saved;
+            scopes.remove(scopes.size() - 1);
+        } else if (stmt instanceof Stmt.If ifStmt) {
+            Label elseBranch = new Label();
+            Label end = new Label();
+            branch(ifStmt.condition(), false, elseBranch);
+            statement(ifStmt.thenBranch());
+            jump(GOTO, end);
+            place(elseBranch);
+            if (ifStmt.elseBranch() != null) {
+                statement(ifStmt.elseBranch());
+            }
+            place(end);
+        } else if (stmt instanceof Stmt.While whileStmt) {
+            Label start = new Label();
+            Label end = new Label();
+            place(start);
+            pollCancellation();
+            branch(whileStmt.condition(), false, end);
+            statement(whileStmt.body());
+            jump(GOTO, start);
+            place(end);
+        } else if (stmt instanceof Stmt.Return returnStmt) {
+            if (returnStmt.value() == null) throw new Unsupported();
+            if (returnStmt.value() instanceof Expr.Call call) {
+                selfTailCall(call);
+            } else {
+                number(returnStmt.value());
+                emit(DRETURN, -2);
+            }
+        } else {
+            // Printing and nested functions escape the frame.
+            throw new Unsupported();
+        }
+    }
+
+    /**
+     * Returns whether running {@code statements} can reach their end. Lox has
+     * no {@code break}, so only a {@code while (true)} never ends normally.
+     */
+    private static boolean completesNormally(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (!completesNormally(statement)) return false;
+        }
+        return true;
+    }
+
+    private static boolean completesNormally(Stmt stmt) {
+        if (stmt instanceof Stmt.Return) {
+            return false;
+        } else if (stmt instanceof Stmt.Block block) {
+            return completesNormally(block.statements());
+        } else if (stmt instanceof Stmt.If ifStmt) {
+            return ifStmt.elseBranch() == null
+                    || completesNormally(ifStmt.thenBranch())
+                    || completesNormally(ifStmt.elseBranch());
+        } else if (stmt instanceof Stmt.While whileStmt) {
+            return !(whileStmt.condition() instanceof Expr.Literal literal && Values.isTruthy(literal.value()));
+        }
+        return true;
+    }
+
+    /**
+     * Emits code leaving the numeric value of {@code expr} on the stack.
+     */
+    private void number(Expr expr) {
+        if (expr instanceof Expr.Grouping grouping) {
+            number(grouping.expr());
+        } else if (expr instanceof Expr.Literal literal) {
+            if (!(literal.value() instanceof Double value)) throw new Unsupported();
+            if (Double.doubleToRawLongBits(value) == 0L) {
+                emit(DCONST_0, 2);
+            } else if (value == 1.0) {
+                emit(DCONST_1, 2);
+            } else {
+                emit(LDC2_W, 2);
+                emitShort(classWriter.doubleConstant(value));
+            }
+        } else if (expr instanceof Expr.Variable variable) {
+            if (variable.depth() < 0) throw new Unsupported();
+            load(local(variable.depth(), variable.slot()));
+        } else if (expr instanceof Expr.Assign assign) {
+            if (assign.depth() < 0) throw new Unsupported();
+            number(assign.value());
+            emit(DUP2, 2);
+            store(local(assign.depth(), assign.slot()));
+        } else if (expr instanceof Expr.Unary unary && unary.operator().type() == TokenType.MINUS) {
+            number(unary.right());
+            emit(DNEG, 0);
+        } else if (expr instanceof Expr.Binary binary) {
+            arithmetic(binary);
+        } else if (expr instanceof Expr.Call call) {
+            selfCall(call);
+        } else {
+            throw new Unsupported();
+        }
+    }
+
+    private void arithmetic(Expr.Binary binary) {
+        TokenType type = binary.operator().type();
+        if (type != TokenType.PLUS && type != TokenType.MINUS
+                && type != TokenType.STAR && type != TokenType.SLASH) {
+            throw new Unsupported();
+        }
+        number(binary.left());
+        number(binary.right());
+        switch (type) {
+            case PLUS -> emit(DADD, -2);
+            case MINUS -> emit(DSUB, -2);
+            case STAR -> emit(DMUL, -2);
+            default -> {
+                // Division by zero is a Lox runtime error; let the interpreter raise it.
+                Label nonZero = new Label();
+                emit(DUP2, 2);
+                emit(DCONST_0, 2);
+                emit(DCMPL, -3);
+                jump(IFNE, nonZero);
+                deoptimizeHere();
+                place(nonZero);
+                emit(DDIV, -2);
+            }
+        }
+    }
+
+    private void selfCall(Expr.Call call) {
+        requireSelfCall(call);
+        emit(ALOAD_0, 1);
+        for (Expr argument : call.arguments()) {
+            number(argument);
+        }
+        int arguments = 1 + call.arguments().size() * 2;
+        emit(INVOKESTATIC, 2 - arguments);
+        emitShort(classWriter.methodRef(CLASS_NAME, METHOD_NAME, descriptor));
+    }
+
+    /**
+     * Compiles {@code return f(...)} to a jump back to the start of the
+     * method with the parameters replaced, like the interpreter's trampoline.
+     */
+    private void selfTailCall(Expr.Call call) {
+        requireSelfCall(call);
+        for (Expr argument : call.arguments()) {
+            number(argument);
+        }
+        // Parameters are the first slots of the function's frame.
+        for (int slot = call.arguments().size() - 1; slot >= 0; slot--) {
+            store(local(scopes.size() - 1, slot));
+        }
+        jump(GOTO, start);
+    }
+
+    private void requireSelfCall(Expr.Call call) {
+        if (!(call.callee() instanceof Expr.Variable callee)
+                || callee.depth() >= 0
+                || function.slot() >= 0
+                || callee.name().symbol() != function.name().symbol()
+                || call.arguments().size() != function.params().size()) {
+            throw new Unsupported();
+        }
+        selfCalls = true;
+    }
+
+    /**
+     * Emits a jump to {@code target} taken when the truthiness of
+     * {@code expr} equals {@code when}.
+     */
+    private void branch(Expr expr, boolean when, Label target) {
+        if (expr instanceof Expr.Grouping grouping) {
+            branch(grouping.expr(), when, target);
+        } else if (expr instanceof Expr.Literal literal) {
+            if (Values.isTruthy(literal.value()) == when) {
+                jump(GOTO, target);
+            }
+        } else if (expr instanceof Expr.Unary unary && unary.operator().type() == TokenType.BANG) {
+            branch(unary.right(), !when, target);
+        } else if (expr instanceof Expr.Logical logical) {
+            boolean isOr = logical.operator().type() == TokenType.OR;
+            if (isOr == when) {
+                branch(logical.left(), when, target);
+                branch(logical.right(), when, target);
+            } else {
+                Label skip = new Label();
+                branch(logical.left(), !when, skip);
+                branch(logical.right(), when, target);
+                place(skip);
+            }
+        } else if (expr instanceof Expr.Binary binary && isComparison(binary.operator())) {
+            compare(binary, when, target);
+        } else {
+            // Any number is truthy.
+            number(expr);
+            emit(POP2, -2);
+            if (when) {
+                jump(GOTO, target);
+            }
+        }
+    }
+
+    private static boolean isComparison(Token operator) {
+        return switch (operator.type()) {
+            case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, EQUAL_EQUAL, BANG_EQUAL -> true;
+            default -> false;
+        };
+    }
+
+    private void compare(Expr.Binary binary, boolean when, Label target) {
+        number(binary.left());
+        number(binary.right());
+        // dcmpg/dcmpl pick the NaN result that makes the comparison false;
+        // equality goes through Double.compare to match Double.equals.
+        switch (binary.operator().type()) {
+            case LESS -> {
+                emit(DCMPG, -3);
+                jump(when ? IFLT : IFGE, target);
+            }
+            case LESS_EQUAL -> {
+                emit(DCMPG, -3);
+                jump(when ? IFLE : IFGT, target);
+            }
+            case GREATER -> {
+                emit(DCMPL, -3);
+                jump(when ? IFGT : IFLE, target);
+            }
+            case GREATER_EQUAL -> {
+                emit(DCMPL, -3);
+                jump(when ? IFGE : IFLT, target);
+            }
+            case EQUAL_EQUAL -> {
+                emit(INVOKESTATIC, -3);
+                emitShort(classWriter.methodRef("java/lang/Double", "compare", "(DD)I"));
+                jump(when ? IFEQ : IFNE, target);
+            }
+            default -> {
+                emit(INVOKESTATIC, -3);
+                emitShort(classWriter.methodRef("java/lang/Double", "compare", "(DD)I"));
+                jump(when ? IFNE : IFEQ, target);
+            }
+        }
+    }
+
+    private int local(int depth, int slot) {
+        int scope = scopes.size() - 1 - depth;
+        // Variables captured from outside the function are not compiled.
+        if (scope < 0) throw new Unsupported();
+        return scopes.get(scope) + slot * 2;
+    }
+
+    private void load(int local) {
+        localInstruction(DLOAD, local, 2);
+    }
+
+    private void store(int local) {
+        localInstruction(DSTORE, local, -2);
+    }
+
+    private void localInstruction(int opcode, int local, int stackEffect) {
+        if (local > 0xFF) {
+            emit(WIDE, 0);
+            emit(opcode, stackEffect);
+            emitShort(local);
+        } else {
+            emit(opcode, stackEffect);
+            emitByte(local);
+        }
+    }
+
+    /**
+     * Emits a check that deoptimizes once the run has been cancelled.
+     */
+    private void pollCancellation() {
+        Label running = new Label();
+        emit(ALOAD_0, 1);
+        emit(INVOKEVIRTUAL, 0);
+        emitShort(classWriter.methodRef(FLAG_CLASS, "get", "()Z"));
+        jump(IFEQ, running);
+        deoptimizeHere();
+        place(running);
+    }
+
+    private void deoptimizeHere() {
+        emit(INVOKESTATIC, 1);
+        emitShort(classWriter.methodRef(RUNTIME_CLASS, "deoptimize", "()Ljava/lang/RuntimeException;"));
+        emit(ATHROW, -1);
+    }
+
+    private void jump(int opcode, Label target) {
+        int at = length;
+        emit(opcode, opcode == GOTO ? 0 : -1);
+        if (target.position >= 0) {
+            if (at - target.position > -Short.MIN_VALUE) throw new Unsupported();
+            emitShort(target.position - at);
+        } else {
+            target.branches.add(at);
+            emitShort(0);
+        }
+    }
+
+    private void place(Label label) {
+        label.position = length;
+        for (int at : label.branches) {
+            int offset = length - at;
+            if (offset > Short.MAX_VALUE) throw new Unsupported();
+            code[at + 1] = (byte) (offset >> 8);
+            code[at + 2] = (byte) offset;
+        }
+    }
+
+    private void emit(int opcode, int stackEffect) {
+        emitByte(opcode);
+        stack += stackEffect;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private void emitShort(int value) {
+        emitByte(value >> 8);
+        emitByte(value);
+    }
+
+    private void emitByte(int value) {
+        if (length == code.length) {
+            code = Arrays.copyOf(code, length * 2);
+        }
+        code[length++] = (byte) value;
+    }
+}
@@ -0,0 +1,144 @@
+package com.stahu.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal class file writer for {@link JitCompiler}: one final class with a
+ * single static method. Emits class file version 49 so the JVM verifies the
+ * code by type inference and no StackMapTable has to be computed.
+ */
+class JvmClassWriter {
+    private static final int VERSION = 49;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolCount = 1;
+
+    private final String className;
+    private final int thisClass;
+
+    JvmClassWriter(String className) {
+        this.className = className;
+        this.thisClass = classRef(className);
+    }
+
+    String className() {
+        return className;
+    }
+
+    int utf8(String value) {
+        return entry("U" + value, 1, () -> {
+            pool.writeByte(CONSTANT_UTF8);
+            pool.writeUTF(value);
+        });
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return entry("C" + internalName, 1, () -> {
+            pool.writeByte(CONSTANT_CLASS);
+            pool.writeShort(name);
+        });
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("N" + name + ":" + descriptor, 1, () -> {
+            pool.writeByte(CONSTANT_NAME_AND_TYPE);
+            pool.writeShort(nameIndex);
+            pool.writeShort(descriptorIndex);
+        });
+        return entry("M" + owner + "." + name + descriptor, 1, () -> {
+            pool.writeByte(CONSTANT_METHODREF);
+            pool.writeShort(ownerIndex);
+            pool.writeShort(nameAndType);
+        });
+    }
+
+    int doubleConstant(double value) {
+        // Doubles take two constant pool slots.
+        return entry("D" + Double.doubleToRawLongBits(value), 2, () -> {
+            pool.writeByte(CONSTANT_DOUBLE);
+            pool.writeDouble(value);
+        });
+    }
+
+    byte[] toByteArray(String methodName, String descriptor, byte[] code, int codeLength,
+                       int maxStack, int maxLocals) {
+        int superClass = classRef("java/lang/Object");
+        int name = utf8(methodName);
+        int type = utf8(descriptor);
+        int codeAttribute = utf8("Code");
+        if (poolCount > 0xFFFF) {
+            throw new IllegalStateException("Constant pool overflow.");
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+
+            out.writeShort(0x0010 | 0x0020); // ACC_FINAL | ACC_SUPER
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+
+            out.writeShort(1); // methods
+            out.writeShort(0x0001 | 0x0008); // ACC_PUBLIC | ACC_STATIC
+            out.writeShort(name);
+            out.writeShort(type);
+            out.writeShort(1); // attributes
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + codeLength);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(codeLength);
+            out.write(code, 0, codeLength);
+            out.writeShort(0); // exception table
+            out.writeShort(0); // code attributes
+
+            out.writeShort(0); // class attributes
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface PoolWrite {
+        void write() throws IOException;
+    }
+
+    private int entry(String key, int slots, PoolWrite write) {
+        Integer existing = entries.get(key);
+        if (existing != null) return existing;
+
+        int index = poolCount;
+        try {
+            write.write();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        poolCount += slots;
+        entries.put(key, index);
+        return index;
+    }
+}
@@ -2,29 +2,96 @@ package com.stahu.lox;
 
 import com.stahu.lox.error.RuntimeError;
 import com.stahu.lox.model.Token;
-import com.stahu.lox.model.TokenType;
+import com.stahu.lox.model.TokenBuffer;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
 
 
 public class Lox {
+    private enum Backend {
+        TREE_WALKER,
+        BYTECODE,
+        NODES,
+        CLOSURES
+    }
+
+    // Declared first: the interpreter below prints and reports through these.
+    static final OutputSink STDOUT = new BufferedOutputSink(System.out, Boolean.getBoolean("lox.output.async"));
+    static final ErrorReporter CONSOLE = new ErrorReporter() {
+        @Override
+        public void report(int line, String where, String message) {
+            // Keep errors after the output printed before them.
+            STDOUT.flush();
+            System.err.println("[line " + line + "] Error" + where + ": " + message);
+            hadError = true;
+        }
+
+        @Override
+        public void runtimeError(RuntimeError error) {
+            if (Telemetry.ENABLED) Telemetry.runtimeError(error.getMessage(), error.line());
+            STDOUT.flush();
+            System.err.println(error.getMessage() +
+                    "\n[line " + error.line() + "]");
+            hadRuntimeError = true;
+        }
+    };
+
     private static final Interpreter interpreter = new Interpreter();
+    private static final VirtualMachine vm = new VirtualMachine();
+    private static final NodeInterpreter nodeInterpreter = new NodeInterpreter();
+    private static final ClosureInterpreter closureInterpreter = new ClosureInterpreter();
+    private static Backend backend = Backend.TREE_WALKER;
+    private static boolean optimize = false;
+    private static boolean stream = false;
+    private static boolean useCache = true;
+    private static boolean profile = false;
+    private static boolean daemon = false;
+    private static final Runnable END_OF_SCRIPT = () -> {};
     static boolean hadError = false;
     static boolean hadRuntimeError = false;
 
     public static void main(String[] args) {
+        Telemetry.register();
+        // Also covers exits that skip the flushes below, such as an uncaught stack overflow.
+        Runtime.getRuntime().addShutdownHook(new Thread(STDOUT::flush));
         try {
-            if (args.length > 1) {
-                System.out.println("Usage: jlox [script]");
-                System.exit(64); // Exit code 64 indicates a command line usage error.
-            } else if (args.length == 1) {
-                runFile(args[0]);
+            int next = 0;
+            while (next < args.length && args[next].startsWith("--")) {
+                switch (args[next]) {
+                    case "--vm" -> backend = Backend.BYTECODE;
+                    case "--nodes" -> backend = Backend.NODES;
+                    case "--closures" -> backend = Backend.CLOSURES;
+                    case "--optimize" -> optimize = true;
+                    case "--stream" -> stream = true;
+                    case "--no-cache" -> useCache = false;
+                    case "--profile" -> profile = true;
+                    case "--daemon" -> daemon = true;
+                    default -> usage();
+                }
+                next++;
+            }
+
+            if (daemon) {
+                // The daemon runs scripts through the embedding API, which uses the tree walker.
+                if (args.length - next > 1 || backend != Backend.TREE_WALKER || profile || stream) usage();
+                Path socket = args.length - next == 1 ? Paths.get(args[next]) : LoxDaemon.defaultSocket();
+                new LoxDaemon(optimize).serve(socket);
+            // The profiler follows the tree walker's calls and needs a script.
+            } else if (args.length - next > 1 || profile && (backend != Backend.TREE_WALKER || args.length == next)) {
+                usage();
+            } else if (args.length - next == 1) {
+                runFile(args[next]);
             } else {
                 runPrompt();
             }
@@ -33,9 +100,36 @@ public class Lox {
         }
     }
 
+    private static void usage() {
+        System.out.println("Usage: jlox [--vm | --nodes | --closures] [--optimize] [--stream] [--no-cache] [--profile] [script]\n" +
+                "       jlox --daemon [--optimize] [socket]");
+        System.exit(64); // Exit code 64 indicates a command line usage error.
+    }
+
     private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        Path script = Paths.get(path);
+        // Scan the file in place instead of decoding it into a String first.
+        try (FileChannel channel = FileChannel.open(script)) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ProgramCache cache = useCache ? new ProgramCache(script, bytes) : null;
+            List<Stmt> cached = cache == null ? null : cache.load();
+
+            if (profile) {
+                interpreter.profiler = new Profiler();
+                interpreter.profiler.start();
+            }
+            if (cached != null) {
+                execute(cached);
+            } else if (stream) {
+                runStreaming(new ByteSource(bytes), cache);
+            } else {
+                run(new ByteSource(bytes), cache);
+            }
+        }
+        STDOUT.flush();
+        if (profile) {
+            interpreter.profiler.stop(script.resolveSibling(script.getFileName() + ".collapsed"), System.err);
+        }
 
         if (hadError) {
             System.exit(65);
@@ -50,6 +144,7 @@ public class Lox {
         BufferedReader reader = new BufferedReader(input);
 
         for (;;) {
+            STDOUT.flush();
             System.out.print("> ");
             String line = reader.readLine();
             if (line == null) break;
@@ -58,39 +153,146 @@ public class Lox {
         }
     }
 
-    private static void run(String source) {
+    private static void run(CharSequence source) {
+        run(source, null);
+    }
+
+    private static void run(CharSequence source, ProgramCache cache) {
+        Telemetry.PhaseEvent phase = Telemetry.beginPhase("scan");
         Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
+        TokenBuffer tokens = scanner.scanTokens();
+        Telemetry.endPhase(phase);
 
+        phase = Telemetry.beginPhase("parse");
         Parser parser = new Parser(tokens);
         List<Stmt> statements = parser.parse();
+        Telemetry.endPhase(phase);
         // Stop if there was a syntax error.
         if (hadError) {
             return;
         }
-        interpreter.interpret(statements);
+
+        phase = Telemetry.beginPhase("resolve");
+        statements = new Resolver().resolve(statements);
+        Telemetry.endPhase(phase);
+        // Stop if there was a resolution error.
+        if (hadError) {
+            return;
+        }
+        if (cache != null) {
+            cache.store(statements);
+        }
+        execute(statements);
     }
 
-    static void error(int line, String message) {
-        report(line, "", message);
+    private static void execute(List<Stmt> statements) {
+        if (optimize) {
+            statements = new Optimizer().optimize(statements);
+        }
+
+        Runnable program = prepare(statements);
+        if (program != null) {
+            Telemetry.PhaseEvent phase = Telemetry.beginPhase("execute");
+            program.run();
+            Telemetry.endPhase(phase);
+        }
+    }
+
+    /**
+     * Scans, parses and resolves on a separate thread while this one runs
+     * every top-level declaration as soon as it has been handed over. A
+     * syntax or resolution error stops execution from that declaration on,
+     * though parsing carries on to report the remaining errors; a runtime
+     * error cancels the parser.
+     */
+    private static void runStreaming(CharSequence source, ProgramCache cache) {
+        // Scanning, parsing and execution overlap, so they are timed as one phase.
+        Telemetry.PhaseEvent phase = Telemetry.beginPhase("stream");
+        BlockingQueue<Runnable> ready = new ArrayBlockingQueue<>(64);
+        Thread producer = Thread.ofPlatform().name("lox-parser").start(() -> {
+            try {
+                Resolver resolver = new Resolver();
+                List<Stmt> resolved = new ArrayList<>();
+                new Parser(new Scanner(source)).parse(statement -> {
+                    if (hadError) return;
+                    List<Stmt> statements = List.of(resolver.resolve(statement));
+                    if (hadError) return;
+                    if (cache != null) {
+                        resolved.addAll(statements);
+                    }
+                    if (optimize) {
+                        statements = new Optimizer().optimize(statements);
+                    }
+
+                    Runnable program = prepare(statements);
+                    if (program == null) return;
+                    try {
+                        ready.put(program);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException();
+                    }
+                });
+                if (cache != null && !hadError) {
+                    cache.store(resolved);
+                }
+            } catch (CancellationException e) {
+                // Execution stopped; nothing is waiting for more statements.
+            } finally {
+                try {
+                    ready.put(END_OF_SCRIPT);
+                } catch (InterruptedException e) {
+                    // Execution stopped before the end of the script.
+                }
+            }
+        });
+
+        try {
+            for (Runnable program = ready.take(); program != END_OF_SCRIPT; program = ready.take()) {
+                program.run();
+                if (hadRuntimeError) break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            producer.interrupt();
+            try {
+                producer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Telemetry.endPhase(phase);
+        }
     }
 
-    private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
+    /**
+     * Readies resolved statements for the selected backend. Returns
+     * {@code null} when they fail to compile.
+     */
+    private static Runnable prepare(List<Stmt> statements) {
+        return switch (backend) {
+            case TREE_WALKER -> () -> interpreter.interpret(statements);
+            case BYTECODE -> {
+                VmFunction script = new BytecodeCompiler().compile(statements);
+                if (hadError) {
+                    yield null;
+                }
+                yield () -> vm.interpret(script);
+            }
+            case NODES -> () -> nodeInterpreter.interpret(statements);
+            case CLOSURES -> () -> closureInterpreter.interpret(statements);
+        };
+    }
+
+    static void error(int line, String message) {
+        CONSOLE.error(line, message);
     }
 
     static void error(Token token, String message) {
-        if (token.type() == TokenType.EOF) {
-            report(token.line(), " at end", message);
-        } else {
-            report(token.line(), " at '" + token.lexeme() + "'", message);
-        }
+        CONSOLE.error(token, message);
     }
 
     static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() +
-                "\n[line " + error.token().line() + "]");
-        hadRuntimeError = true;
+        CONSOLE.runtimeError(error);
     }
 }
\ No newline at end of file
@@ -1,8 +1,35 @@
 package com.stahu.lox;
 
-import java.util.List;
-
+/**
+ * A value that can be called. {@link #call(Interpreter, Object[])} takes the
+ * arguments as an array. Callers that know how many arguments they pass can
+ * use the fixed-arity entry points instead; a callee that overrides the one
+ * for its arity is called without an array being allocated.
+ */
 interface LoxCallable {
+    Object[] NO_ARGUMENTS = {};
+
     int arity();
-    Object call(Interpreter interpreter, List<Object> arguments);
-}
\ No newline at end of file
+
+    Object call(Interpreter interpreter, Object[] arguments);
+
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, NO_ARGUMENTS);
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, new Object[] {a});
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, new Object[] {a, b});
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, new Object[] {a, b, c});
+    }
+
+    default Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return call(interpreter, new Object[] {a, b, c, d});
+    }
+}
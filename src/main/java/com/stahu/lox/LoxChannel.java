@@ -0,0 +1,79 @@
+package com.stahu.lox;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded FIFO channel between tasks. {@code send} blocks while the channel
+ * is full and {@code receive} while it is empty. Once closed, a channel
+ * refuses new values and hands out {@code nil} when drained. Blocking parks
+ * only the virtual thread, so waiting tasks are cheap.
+ */
+final class LoxChannel {
+    private final Object[] buffer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int head = 0;
+    private int count = 0;
+    private boolean closed = false;
+
+    LoxChannel(int capacity) {
+        this.buffer = new Object[capacity];
+    }
+
+    void send(Object value) {
+        lock.lock();
+        try {
+            while (count == buffer.length && !closed) {
+                notFull.await();
+            }
+            if (closed) throw new Natives.Failure("Send on a closed channel.");
+            buffer[(head + count) % buffer.length] = value;
+            count++;
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Natives.Failure("Interrupted while sending.");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Object receive() {
+        lock.lock();
+        try {
+            while (count == 0 && !closed) {
+                notEmpty.await();
+            }
+            if (count == 0) return null;
+            Object value = buffer[head];
+            buffer[head] = null;
+            head = (head + 1) % buffer.length;
+            count--;
+            notFull.signal();
+            return value;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Natives.Failure("Interrupted while receiving.");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+}
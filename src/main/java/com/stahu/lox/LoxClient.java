@@ -0,0 +1,57 @@
+package com.stahu.lox;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Command line front end for {@link LoxDaemon}. Takes the same script
+ * argument as {@code jlox}, or reads the script from standard input, and
+ * exits with the code the script would have exited with.
+ */
+public class LoxClient {
+    public static void main(String[] args) throws IOException {
+        Path socket = LoxDaemon.defaultSocket();
+        int next = 0;
+        if (args.length >= 2 && args[0].equals("--socket")) {
+            socket = Paths.get(args[1]);
+            next = 2;
+        }
+        if (args.length - next > 1) {
+            System.out.println("Usage: jlox-client [--socket path] [script]");
+            System.exit(64);
+        }
+
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+            if (args.length - next == 1) {
+                out.writeByte(LoxDaemon.PATH);
+                LoxDaemon.writeString(out, Paths.get(args[next]).toAbsolutePath().toString());
+            } else {
+                out.writeByte(LoxDaemon.SOURCE);
+                LoxDaemon.writeString(out, new String(System.in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            out.flush();
+
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            while (true) {
+                byte tag = in.readByte();
+                if (tag == LoxDaemon.EXIT) {
+                    System.exit(in.readInt());
+                }
+                PrintStream target = tag == LoxDaemon.STDERR ? System.err : System.out;
+                target.write(in.readNBytes(in.readInt()));
+                target.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.stahu.lox;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * One execution of Lox programs, with its own globals, output and errors.
+ * Programs run in the same context see each other's global declarations, like
+ * lines typed at the prompt. A context is cheap to create and must be used by
+ * one thread at a time.
+ */
+public final class LoxContext {
+    private final ErrorCollector errors = new ErrorCollector();
+    private final OutputSink out;
+    private final Interpreter interpreter;
+
+    /**
+     * Creates a context that prints to {@code System.out}.
+     */
+    public LoxContext() {
+        this(System.out);
+    }
+
+    /**
+     * Creates a context that prints to {@code out}. Output is buffered and
+     * written out at the latest when {@link #run} returns.
+     */
+    public LoxContext(PrintStream out) {
+        this.out = new BufferedOutputSink(out, false);
+        this.interpreter = new Interpreter(this.out, errors);
+    }
+
+    /**
+     * Runs {@code program} to completion or to its first runtime error.
+     *
+     * @return {@code false} if it stopped on a runtime error, which is then
+     *         added to {@link #errors()}
+     * @throws CancellationException if the context has been cancelled
+     */
+    public boolean run(LoxProgram program) {
+        int before = errors.size();
+        try {
+            interpreter.interpret(program.statements);
+        } finally {
+            out.flush();
+        }
+        return errors.size() == before;
+    }
+
+    /**
+     * Stops the program running in this context, and the tasks it spawned,
+     * from another thread. The run throws {@link CancellationException} once
+     * it next loops or calls a function, and so does every later run.
+     */
+    public void cancel() {
+        interpreter.cancel();
+    }
+
+    /**
+     * Returns the runtime errors raised so far in this context.
+     */
+    public List<LoxError> errors() {
+        return errors.errors();
+    }
+}
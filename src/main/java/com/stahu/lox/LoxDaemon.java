@@ -0,0 +1,240 @@
+package com.stahu.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Keeps a warm interpreter listening on a Unix domain socket, so running a
+ * script costs a connection instead of a JVM start. Each connection carries
+ * one script, which is compiled and run in a fresh {@link LoxContext} on its
+ * own virtual thread while its output is streamed back. {@link LoxClient} is
+ * the other end.
+ * <p>
+ * A request is a {@link #PATH} or {@link #SOURCE} tag followed by a
+ * length-prefixed UTF-8 string. The reply is a sequence of {@link #STDOUT}
+ * and {@link #STDERR} frames, each a tag, a length and that many bytes, ended
+ * by an {@link #EXIT} tag and the exit code the command line would have used.
+ * The client sends nothing after its request; closing the connection cancels
+ * the script.
+ */
+final class LoxDaemon {
+    static final byte PATH = 'P';
+    static final byte SOURCE = 'S';
+    static final byte STDOUT = 1;
+    static final byte STDERR = 2;
+    static final byte EXIT = 3;
+
+    private final LoxEngine engine;
+
+    LoxDaemon(boolean optimize) {
+        this.engine = new LoxEngine(optimize);
+    }
+
+    static Path defaultSocket() {
+        return Paths.get(System.getProperty("java.io.tmpdir"), "jlox-" + System.getProperty("user.name") + ".sock");
+    }
+
+    /**
+     * Accepts connections on {@code socket} until the process is stopped.
+     */
+    void serve(Path socket) throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            bindPrivately(server, socket.toAbsolutePath());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(socket);
+                } catch (IOException e) {
+                    // Nothing left to do on the way out.
+                }
+            }));
+            System.err.println("jlox daemon listening on " + socket);
+
+            while (true) {
+                SocketChannel client = server.accept();
+                Thread.ofVirtual().name("lox-request").start(() -> handle(client));
+            }
+        }
+    }
+
+    /**
+     * Binds {@code server} to {@code socket}, which only the owner may
+     * connect to. The socket is bound in a directory no one else can enter
+     * and restricted before it is moved into place, so other users never get
+     * a chance to connect.
+     */
+    private static void bindPrivately(ServerSocketChannel server, Path socket) throws IOException {
+        Path directory = Files.createTempDirectory(socket.getParent(), ".jlox",
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        Path bound = directory.resolve("socket");
+        try {
+            server.bind(UnixDomainSocketAddress.of(bound));
+            Files.setPosixFilePermissions(bound, PosixFilePermissions.fromString("rw-------"));
+            Files.move(bound, socket, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(bound);
+            Files.delete(directory);
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (client;
+             DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+             DataOutputStream out = new DataOutputStream(Channels.newOutputStream(client))) {
+            byte kind = in.readByte();
+            String request = readString(in);
+            PrintStream stdout = new PrintStream(new FrameOutputStream(out, STDOUT), true, StandardCharsets.UTF_8);
+            PrintStream stderr = new PrintStream(new FrameOutputStream(out, STDERR), false, StandardCharsets.UTF_8);
+            LoxContext context = new LoxContext(stdout);
+            watchForDisconnect(in, context, Thread.currentThread());
+
+            int exitCode;
+            try {
+                exitCode = run(kind, request, context, stdout, stderr);
+            } catch (CancellationException e) {
+                // The client went away.
+                return;
+            } catch (RuntimeException e) {
+                // Report a bug in the interpreter instead of dropping the connection.
+                stdout.flush();
+                stderr.println("Internal error: " + e);
+                exitCode = 70;
+            }
+            stdout.flush();
+            stderr.flush();
+            synchronized (out) {
+                out.writeByte(EXIT);
+                out.writeInt(exitCode);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The client went away; there is no one left to tell.
+        }
+    }
+
+    /**
+     * Cancels the request once the client closes the connection, which ends
+     * this read, and interrupts its thread to wake any task or channel
+     * operation it is waiting on. Closing the connection after the reply
+     * ends the read too, when there is nothing left to cancel. The watcher is
+     * a platform thread, since a script busy computing keeps its virtual
+     * thread's carrier and could starve a virtual watcher.
+     */
+    private static void watchForDisconnect(InputStream in, LoxContext context, Thread request) {
+        Thread.ofPlatform().name("lox-disconnect").daemon().start(() -> {
+            try {
+                in.read();
+            } catch (IOException e) {
+                // Closed either way.
+            }
+            context.cancel();
+            request.interrupt();
+        });
+    }
+
+    private int run(byte kind, String request, LoxContext context, PrintStream stdout, PrintStream stderr) {
+        String source;
+        if (kind == PATH) {
+            try {
+                source = Files.readString(Paths.get(request));
+            } catch (IOException | InvalidPathException e) {
+                stderr.println("Could not read " + request + ".");
+                return 66;
+            }
+        } else if (kind == SOURCE) {
+            source = request;
+        } else {
+            stderr.println("Unknown request.");
+            return 64;
+        }
+
+        LoxProgram program;
+        try {
+            program = engine.compile(source);
+        } catch (LoxException e) {
+            e.errors().forEach(stderr::println);
+            return 65;
+        }
+
+        try {
+            if (context.run(program)) return 0;
+        } catch (StackOverflowError e) {
+            // Keep the daemon alive for the next request.
+            stdout.flush();
+            stderr.println("Stack overflow.");
+            return 70;
+        }
+        stdout.flush();
+        for (LoxError error : context.errors()) {
+            stderr.println(error.message() + "\n[line " + error.line() + "]");
+        }
+        return 70;
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Sends everything written to it as frames of one kind, at most 8 KiB
+     * each. Standard output is flushed after every line so it reaches the
+     * client while the script runs.
+     */
+    private static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte tag;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+
+        FrameOutputStream(DataOutputStream out, byte tag) {
+            this.out = out;
+            this.tag = tag;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            buffer.write(b);
+            if (buffer.size() >= 8192) flush();
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            buffer.write(bytes, offset, length);
+            if (buffer.size() >= 8192) flush();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (buffer.size() == 0) return;
+            synchronized (out) {
+                out.writeByte(tag);
+                out.writeInt(buffer.size());
+                buffer.writeTo(out);
+                out.flush();
+            }
+            buffer.reset();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.stahu.lox;
+
+import com.stahu.lox.model.TokenBuffer;
+
+import java.util.List;
+
+/**
+ * Entry point for running Lox from Java. An engine compiles sources into
+ * {@link LoxProgram}s, which are immutable and can be run by any number of
+ * {@link LoxContext}s at once, on any threads:
+ * <pre>{@code
+ * LoxProgram program = new LoxEngine().compile(source);
+ * LoxContext context = new LoxContext(out);
+ * if (!context.run(program)) {
+ *     context.errors().forEach(System.err::println);
+ * }
+ * }</pre>
+ * Programs run on the tree-walking interpreter. An engine holds no state
+ * besides its settings and is safe to share.
+ */
+public final class LoxEngine {
+    private final boolean optimize;
+
+    public LoxEngine() {
+        this(false);
+    }
+
+    /**
+     * @param optimize whether to run the {@link Optimizer} over compiled
+     *                 programs
+     */
+    public LoxEngine(boolean optimize) {
+        this.optimize = optimize;
+    }
+
+    /**
+     * Scans, parses and resolves {@code source}.
+     *
+     * @throws LoxException if the source has syntax or resolution errors
+     */
+    public LoxProgram compile(CharSequence source) {
+        ErrorCollector errors = new ErrorCollector();
+        TokenBuffer tokens = new Scanner(source, errors).scanTokens();
+        List<Stmt> statements = new Parser(tokens, errors).parse();
+        if (errors.size() == 0) {
+            statements = new Resolver(errors).resolve(statements);
+        }
+        if (errors.size() != 0) {
+            throw new LoxException(errors.errors());
+        }
+
+        if (optimize) {
+            statements = new Optimizer().optimize(statements);
+        }
+        return new LoxProgram(statements);
+    }
+}
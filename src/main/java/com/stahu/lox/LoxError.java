@@ -0,0 +1,15 @@
+package com.stahu.lox;
+
+/**
+ * A compile or runtime error reported by the embedding API.
+ *
+ * @param line    line of the script the error was found on
+ * @param message the error as the command line would print it, without
+ *                the line
+ */
+public record LoxError(int line, String message) {
+    @Override
+    public String toString() {
+        return "[line " + line + "] " + message;
+    }
+}
@@ -0,0 +1,20 @@
+package com.stahu.lox;
+
+import java.util.List;
+
+/**
+ * Thrown by {@link LoxEngine#compile} when the source has syntax or
+ * resolution errors.
+ */
+public class LoxException extends RuntimeException {
+    private final List<LoxError> errors;
+
+    LoxException(List<LoxError> errors) {
+        super(errors.size() == 1 ? errors.get(0).toString() : errors.size() + " errors, first " + errors.get(0));
+        this.errors = errors;
+    }
+
+    public List<LoxError> errors() {
+        return errors;
+    }
+}
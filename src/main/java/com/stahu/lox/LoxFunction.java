@@ -1,31 +1,128 @@
 package com.stahu.lox;
 
-import java.util.List;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
 public class LoxFunction implements LoxCallable {
+    private static final Object NOT_COMPILED = new Object();
+    private static final VarHandle INVOCATIONS;
+
+    static {
+        try {
+            INVOCATIONS = MethodHandles.lookup().findVarHandle(LoxFunction.class, "invocations", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private final Stmt.Function declaration;
     private final Environment closure;
+    // Tasks and parallel workers may call the same function concurrently.
+    private volatile int invocations = 0;
+    private volatile JitCompiler.Compiled compiled;
 
     LoxFunction(Stmt.Function declaration, Environment closure) {
         this.closure = closure;
         this.declaration = declaration;
     }
 
+    /**
+     * Returns a fresh frame for a call. The interpreter evaluates arguments
+     * straight into its first slots and passes it to {@link #call(Interpreter, Environment)}.
+     */
+    Environment newFrame() {
+        return new Environment(closure, declaration.frameSize());
+    }
+
     @Override
-    public Object call(Interpreter interpreter,
-                       List<Object> arguments) {
-        Environment environment = new Environment(closure);
-        for (int i = 0; i < declaration.params().size(); i++) {
-            environment.define(declaration.params().get(i).lexeme(),
-                    arguments.get(i));
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        Environment frame = newFrame();
+        for (int i = 0; i < arguments.length; i++) {
+            frame.define(i, arguments[i]);
         }
+        return call(interpreter, frame);
+    }
 
+    /**
+     * Runs the function with its parameters already stored in {@code frame}.
+     */
+    Object call(Interpreter interpreter, Environment frame) {
+        Profiler profiler = interpreter.profiler;
+        if (profiler != null) profiler.enter(name(), declaration.name().line());
+        Telemetry.CallEvent event = null;
+        if (Telemetry.ENABLED) {
+            Telemetry.call(arity());
+            event = new Telemetry.CallEvent();
+            event.function = name();
+            event.begin();
+        }
         try {
-            interpreter.executeBlock(declaration.body(), environment);
-        } catch (Return returnValue) {
-            return returnValue.value;
+            LoxFunction function = this;
+            // Trampoline: a tail call replaces the function being run instead
+            // of nesting another call on the Java stack.
+            while (true) {
+                interpreter.checkCancelled();
+                Object result = function.callCompiled(interpreter, frame);
+                if (result != NOT_COMPILED) return result;
+
+                switch (interpreter.executeBlock(function.declaration.body(), frame)) {
+                    case NORMAL:
+                        return null;
+                    case RETURN:
+                        return interpreter.takeReturnValue();
+                    case TAIL_CALL:
+                        function = interpreter.takeTailCallee();
+                        frame = interpreter.takeTailFrame();
+                        if (Telemetry.ENABLED) Telemetry.call(function.arity());
+                        if (profiler != null) profiler.replace(function.name(), function.declaration.name().line());
+                        break;
+                }
+            }
+        } finally {
+            if (profiler != null) profiler.exit();
+            if (Telemetry.ENABLED) event.commit();
         }
-        return null;
+    }
+
+    /**
+     * Runs the call in JIT-compiled code if there is any and it applies,
+     * otherwise counts the invocation and returns {@link #NOT_COMPILED}.
+     * Counting stops at the threshold, and the one call that reaches it
+     * compiles the function. Compiled self-calls bypass {@link #call}, so
+     * nothing is compiled while telemetry or the profiler counts calls.
+     */
+    private Object callCompiled(Interpreter interpreter, Environment frame) {
+        if (Telemetry.ENABLED || interpreter.profiler != null) return NOT_COMPILED;
+        JitCompiler.Compiled code = compiled;
+        if (code != null) {
+            Object[] arguments = compiledArguments(interpreter, code, frame);
+            if (arguments != null) {
+                try {
+                    return code.invoke(interpreter.cancelled, arguments);
+                } catch (JitCompiler.Deoptimization deoptimization) {
+                    // The compiled code has no side effects; interpret the call instead.
+                }
+            }
+        } else if (invocations < JitCompiler.THRESHOLD
+                && (int) INVOCATIONS.getAndAdd(this, 1) == JitCompiler.THRESHOLD - 1) {
+            compiled = JitCompiler.compile(declaration);
+        }
+        return NOT_COMPILED;
+    }
+
+    /**
+     * Returns the arguments for the compiled code, or {@code null} when it
+     * cannot be entered.
+     */
+    private Object[] compiledArguments(Interpreter interpreter, JitCompiler.Compiled code, Environment frame) {
+        Object[] arguments = new Object[arity()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = frame.get(i);
+            if (!(arguments[i] instanceof Double)) return null;
+        }
+        // Compiled self-calls are direct, so the name must still refer to us.
+        if (code.selfCalls() && interpreter.globals.get(declaration.name()) != this) return null;
+        return arguments;
     }
 
     @Override
@@ -33,8 +130,16 @@ public class LoxFunction implements LoxCallable {
         return declaration.params().size();
     }
 
+    Stmt.Function declaration() {
+        return declaration;
+    }
+
+    String name() {
+        return declaration.name().lexeme();
+    }
+
     @Override
     public String toString() {
-        return "<fn " + declaration.name().lexeme() + ">";
+        return "<fn " + name() + ">";
     }
 }
@@ -0,0 +1,41 @@
+package com.stahu.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Growable list value. Lists compare by identity, like functions.
+ * <p>
+ * Tasks and parallel workers can reach the same list, so {@code elements} is
+ * only accessed while holding the list's lock.
+ */
+final class LoxList {
+    final List<Object> elements;
+
+    LoxList() {
+        this.elements = new ArrayList<>();
+    }
+
+    LoxList(List<Object> elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * Returns a copy of the elements, for work that runs Lox code on them.
+     */
+    synchronized List<Object> snapshot() {
+        return new ArrayList<>(elements);
+    }
+
+    @Override
+    public String toString() {
+        // Stringified outside the lock, which nested lists take in turn.
+        List<Object> elements = snapshot();
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < elements.size(); i++) {
+            if (i > 0) text.append(", ");
+            text.append(Values.stringify(elements.get(i)));
+        }
+        return text.append(']').toString();
+    }
+}
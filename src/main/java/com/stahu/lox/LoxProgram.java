@@ -0,0 +1,16 @@
+package com.stahu.lox;
+
+import java.util.List;
+
+/**
+ * A compiled script, created by {@link LoxEngine#compile}. Runtime state
+ * lives in the {@link LoxContext} that runs it, so a program can be shared
+ * between threads and run any number of times.
+ */
+public final class LoxProgram {
+    final List<Stmt> statements;
+
+    LoxProgram(List<Stmt> statements) {
+        this.statements = List.copyOf(statements);
+    }
+}
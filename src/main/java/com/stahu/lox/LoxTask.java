@@ -0,0 +1,61 @@
+package com.stahu.lox;
+
+import com.stahu.lox.error.RuntimeError;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * A Lox function running on its own virtual thread, created by
+ * {@code spawn}. A runtime error ends the task and is raised again in
+ * whichever task joins it, and so does any other exception, as a runtime
+ * error.
+ */
+final class LoxTask {
+    private final Thread thread;
+    private Object result;
+    private RuntimeError error;
+
+    private LoxTask(Interpreter interpreter, LoxCallable function) {
+        this.thread = Thread.ofVirtual().name("lox-task").unstarted(() -> {
+            try {
+                result = function.call0(interpreter);
+            } catch (RuntimeError e) {
+                error = e;
+            } catch (Natives.Failure e) {
+                error = new RuntimeError(0, e.getMessage());
+            } catch (CancellationException e) {
+                // The run that spawned the task was cancelled.
+            } catch (RuntimeException e) {
+                error = new RuntimeError(0, "Internal error in task: " + e);
+            } catch (StackOverflowError e) {
+                error = new RuntimeError(0, "Stack overflow in task.");
+            }
+        });
+    }
+
+    static LoxTask start(Interpreter interpreter, LoxCallable function) {
+        LoxTask task = new LoxTask(interpreter, function);
+        task.thread.start();
+        return task;
+    }
+
+    /**
+     * Waits for the task and returns its result. Thread termination orders
+     * the task's writes before the return.
+     */
+    Object join() {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Natives.Failure("Interrupted while joining a task.");
+        }
+        if (error != null) throw error;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "<task>";
+    }
+}
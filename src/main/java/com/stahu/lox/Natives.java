@@ -0,0 +1,230 @@
+package com.stahu.lox;
+
+/**
+ * Native functions installed into the globals of every backend.
+ */
+final class Natives {
+
+    /**
+     * Raised by a native function with an error for the script. Every
+     * backend reports it at the line of the call.
+     */
+    static final class Failure extends RuntimeException {
+        Failure(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    /**
+     * Base of the natives. Each arity overrides the matching fixed-arity
+     * entry point of {@link LoxCallable}, so calls to natives allocate nothing
+     * for their arguments.
+     */
+    private abstract static class NativeFunction implements LoxCallable {
+        @Override
+        public String toString() {
+            return "<native fn>";
+        }
+    }
+
+    private interface Body0 {
+        Object call(Interpreter interpreter);
+    }
+
+    private interface Body1 {
+        Object call(Interpreter interpreter, Object a);
+    }
+
+    private interface Body2 {
+        Object call(Interpreter interpreter, Object a, Object b);
+    }
+
+    private interface Body3 {
+        Object call(Interpreter interpreter, Object a, Object b, Object c);
+    }
+
+    private static LoxCallable native0(Body0 body) {
+        return new NativeFunction() {
+            @Override
+            public int arity() {
+                return 0;
+            }
+
+            @Override
+            public Object call0(Interpreter interpreter) {
+                return body.call(interpreter);
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, Object[] arguments) {
+                return body.call(interpreter);
+            }
+        };
+    }
+
+    private static LoxCallable native1(Body1 body) {
+        return new NativeFunction() {
+            @Override
+            public int arity() {
+                return 1;
+            }
+
+            @Override
+            public Object call1(Interpreter interpreter, Object a) {
+                return body.call(interpreter, a);
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, Object[] arguments) {
+                return body.call(interpreter, arguments[0]);
+            }
+        };
+    }
+
+    private static LoxCallable native2(Body2 body) {
+        return new NativeFunction() {
+            @Override
+            public int arity() {
+                return 2;
+            }
+
+            @Override
+            public Object call2(Interpreter interpreter, Object a, Object b) {
+                return body.call(interpreter, a, b);
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, Object[] arguments) {
+                return body.call(interpreter, arguments[0], arguments[1]);
+            }
+        };
+    }
+
+    private static LoxCallable native3(Body3 body) {
+        return new NativeFunction() {
+            @Override
+            public int arity() {
+                return 3;
+            }
+
+            @Override
+            public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+                return body.call(interpreter, a, b, c);
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, Object[] arguments) {
+                return body.call(interpreter, arguments[0], arguments[1], arguments[2]);
+            }
+        };
+    }
+
+    private Natives() {
+    }
+
+    static void define(Globals globals) {
+        globals.define("clock", native0(interpreter -> System.currentTimeMillis() / 1000.0));
+
+        globals.define("list", native0(interpreter -> new LoxList()));
+        // Tasks and parallel workers may share a list, so these hold its lock.
+        globals.define("append", native2((interpreter, value, element) -> {
+            LoxList list = argument(value, LoxList.class, "append", "a list");
+            synchronized (list) {
+                list.elements.add(element);
+            }
+            return null;
+        }));
+        globals.define("get", native2((interpreter, value, index) -> {
+            LoxList list = argument(value, LoxList.class, "get", "a list");
+            synchronized (list) {
+                return list.elements.get(index(list, index));
+            }
+        }));
+        globals.define("set", native3((interpreter, value, index, element) -> {
+            LoxList list = argument(value, LoxList.class, "set", "a list");
+            synchronized (list) {
+                list.elements.set(index(list, index), element);
+            }
+            return null;
+        }));
+        globals.define("length", native1((interpreter, value) -> {
+            LoxList list = argument(value, LoxList.class, "length", "a list");
+            synchronized (list) {
+                return (double) list.elements.size();
+            }
+        }));
+    }
+
+    /**
+     * Installs the task, channel and data-parallel functions. They run Lox
+     * code on other threads, each with an interpreter of its own, so only the
+     * tree walker offers them.
+     */
+    static void defineConcurrency(Globals globals) {
+        globals.define("spawn", native1((interpreter, value) -> {
+            if (!(value instanceof LoxCallable function) || function.arity() != 0) {
+                throw new Failure("Can only spawn a function that takes no arguments.");
+            }
+            return LoxTask.start(interpreter.fork(), function);
+        }));
+        globals.define("parallelMap", native2((interpreter, list, function) ->
+                Parallel.map(interpreter, argument(list, LoxList.class, "parallelMap", "a list").snapshot(),
+                        function(function, 1, "parallelMap"))));
+        globals.define("parallelReduce", native3((interpreter, list, identity, combine) ->
+                Parallel.reduce(interpreter, argument(list, LoxList.class, "parallelReduce", "a list").snapshot(),
+                        identity, function(combine, 2, "parallelReduce"))));
+        globals.define("parallelFor", native3((interpreter, start, end, body) -> {
+            Parallel.forRange(interpreter, integer(start, "parallelFor"), integer(end, "parallelFor"),
+                    function(body, 1, "parallelFor"));
+            return null;
+        }));
+        globals.define("join", native1((interpreter, task) ->
+                argument(task, LoxTask.class, "join", "a task").join()));
+        globals.define("channel", native1((interpreter, value) -> {
+            if (!(value instanceof Double capacity) || capacity < 1 || capacity != Math.floor(capacity)) {
+                throw new Failure("Channel capacity must be a positive integer.");
+            }
+            return new LoxChannel((int) (double) capacity);
+        }));
+        globals.define("send", native2((interpreter, channel, value) -> {
+            argument(channel, LoxChannel.class, "send", "a channel").send(value);
+            return null;
+        }));
+        globals.define("receive", native1((interpreter, channel) ->
+                argument(channel, LoxChannel.class, "receive", "a channel").receive()));
+        globals.define("close", native1((interpreter, channel) -> {
+            argument(channel, LoxChannel.class, "close", "a channel").close();
+            return null;
+        }));
+    }
+
+    private static <T> T argument(Object argument, Class<T> type, String function, String expected) {
+        if (!type.isInstance(argument)) {
+            throw new Failure("Argument to '" + function + "' must be " + expected + ".");
+        }
+        return type.cast(argument);
+    }
+
+    private static LoxCallable function(Object argument, int arity, String function) {
+        if (!(argument instanceof LoxCallable callable) || callable.arity() != arity) {
+            throw new Failure("Argument to '" + function + "' must be a function that takes " + arity
+                    + (arity == 1 ? " argument." : " arguments."));
+        }
+        return callable;
+    }
+
+    private static int integer(Object value, String function) {
+        if (!(value instanceof Double number) || number != Math.floor(number) || Math.abs(number) > Integer.MAX_VALUE) {
+            throw new Failure("Argument to '" + function + "' must be an integer.");
+        }
+        return (int) (double) number;
+    }
+
+    private static int index(LoxList list, Object value) {
+        if (!(value instanceof Double number) || number != Math.floor(number)
+                || number < 0 || number >= list.elements.size()) {
+            throw new Failure("List index out of range.");
+        }
+        return (int) (double) number;
+    }
+}
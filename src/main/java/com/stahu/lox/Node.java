@@ -0,0 +1,31 @@
+package com.stahu.lox;
+
+/**
+ * Base of the executable node tree built by {@link NodeBuilder}. Nodes know
+ * their parent so a node can rewrite itself in place: it builds a more (or
+ * less) specialized replacement and asks its parent to swap the child.
+ */
+abstract class Node {
+    Node parent;
+
+    <T extends Node> T adopt(T child) {
+        if (child != null) {
+            child.parent = this;
+        }
+        return child;
+    }
+
+    <T extends Node> T replace(T replacement) {
+        parent.replaceChild(this, replacement);
+        replacement.parent = parent;
+        return replacement;
+    }
+
+    /**
+     * Swaps {@code child} for {@code replacement}. Only nodes with children
+     * that may specialize need to override this.
+     */
+    void replaceChild(Node child, Node replacement) {
+        throw new IllegalStateException(getClass().getSimpleName() + " has no replaceable children.");
+    }
+}
@@ -0,0 +1,139 @@
+package com.stahu.lox;
+
+import com.stahu.lox.model.TokenType;
+
+import java.util.List;
+
+/**
+ * Builds the executable node tree from resolved {@link Stmt}/{@link Expr}
+ * records. Binary operators start out uninitialized and specialize on first
+ * execution.
+ */
+class NodeBuilder implements Expr.Visitor<ExprNode>, Stmt.Visitor<StmtNode> {
+    private final Globals globals;
+    private final OutputSink out;
+
+    NodeBuilder(Globals globals, OutputSink out) {
+        this.globals = globals;
+        this.out = out;
+    }
+
+    StmtNode[] build(List<Stmt> statements) {
+        StmtNode[] nodes = new StmtNode[statements.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = build(statements.get(i));
+        }
+        return nodes;
+    }
+
+    private StmtNode build(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private ExprNode build(Expr expr) {
+        return expr == null ? null : expr.accept(this);
+    }
+
+    @Override
+    public StmtNode visitBlockStmt(Stmt.Block stmt) {
+        return new StmtNode.Block(stmt.frameSize(), build(stmt.statements()));
+    }
+
+    @Override
+    public StmtNode visitExpressionStmt(Stmt.Expression stmt) {
+        return new StmtNode.Expression(build(stmt.expression()));
+    }
+
+    @Override
+    public StmtNode visitFunctionStmt(Stmt.Function stmt) {
+        StmtNode body = new StmtNode.Sequence(build(stmt.body()));
+        return new StmtNode.Function(stmt.name(), stmt.params().size(), stmt.frameSize(),
+                stmt.slot(), globals, body);
+    }
+
+    @Override
+    public StmtNode visitIfStmt(Stmt.If stmt) {
+        StmtNode elseBranch = stmt.elseBranch() == null ? null : build(stmt.elseBranch());
+        return new StmtNode.If(build(stmt.condition()), build(stmt.thenBranch()), elseBranch);
+    }
+
+    @Override
+    public StmtNode visitPrintStmt(Stmt.Print stmt) {
+        return new StmtNode.Print(out, build(stmt.expression()));
+    }
+
+    @Override
+    public StmtNode visitReturnStmt(Stmt.Return stmt) {
+        return new StmtNode.Return(build(stmt.value()));
+    }
+
+    @Override
+    public StmtNode visitVarStmt(Stmt.Var stmt) {
+        if (stmt.slot() < 0) {
+            return new StmtNode.DefineGlobal(globals, stmt.name().symbol(), build(stmt.initializer()));
+        }
+        return new StmtNode.DefineLocal(stmt.slot(), build(stmt.initializer()));
+    }
+
+    @Override
+    public StmtNode visitWhileStmt(Stmt.While stmt) {
+        return new StmtNode.While(build(stmt.condition()), build(stmt.body()));
+    }
+
+    @Override
+    public ExprNode visitAssignExpr(Expr.Assign expr) {
+        if (expr.depth() < 0) {
+            return new ExprNode.GlobalAssign(globals, expr.name(), build(expr.value()));
+        }
+        return new ExprNode.LocalAssign(expr.depth(), expr.slot(), build(expr.value()));
+    }
+
+    @Override
+    public ExprNode visitBinaryExpr(Expr.Binary expr) {
+        return new ExprNode.UninitializedBinary(build(expr.left()), expr.operator(), build(expr.right()));
+    }
+
+    @Override
+    public ExprNode visitCallExpr(Expr.Call expr) {
+        ExprNode[] arguments = new ExprNode[expr.arguments().size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = build(expr.arguments().get(i));
+        }
+        return new ExprNode.Call(build(expr.callee()), expr.paren(), arguments);
+    }
+
+    @Override
+    public ExprNode visitGroupingExpr(Expr.Grouping expr) {
+        return build(expr.expr());
+    }
+
+    @Override
+    public ExprNode visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value() instanceof Double number) {
+            return new ExprNode.NumberLiteral(number);
+        }
+        return new ExprNode.Literal(expr.value());
+    }
+
+    @Override
+    public ExprNode visitLogicalExpr(Expr.Logical expr) {
+        return new ExprNode.Logical(build(expr.left()), expr.operator().type() == TokenType.OR,
+                build(expr.right()));
+    }
+
+    @Override
+    public ExprNode visitUnaryExpr(Expr.Unary expr) {
+        if (expr.operator().type() == TokenType.MINUS) {
+            return new ExprNode.Negate(expr.operator(), build(expr.right()));
+        }
+        return new ExprNode.Not(build(expr.right()));
+    }
+
+    @Override
+    public ExprNode visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth() < 0) {
+            return new ExprNode.GlobalRead(globals, expr.name());
+        }
+        return new ExprNode.LocalRead(expr.depth(), expr.slot());
+    }
+}
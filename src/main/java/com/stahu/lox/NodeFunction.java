@@ -0,0 +1,53 @@
+package com.stahu.lox;
+
+/**
+ * Function value of the node backend: a shared, self-specializing body bound
+ * to the frame the declaration ran in.
+ */
+class NodeFunction implements LoxCallable {
+    private final String name;
+    private final int arity;
+    private final int frameSize;
+    private final StmtNode body;
+    private final Environment closure;
+
+    NodeFunction(String name, int arity, int frameSize, StmtNode body, Environment closure) {
+        this.name = name;
+        this.arity = arity;
+        this.frameSize = frameSize;
+        this.body = body;
+        this.closure = closure;
+    }
+
+    /**
+     * Returns a fresh frame for a call, whose first slots the caller fills
+     * with the arguments before passing it to {@link #invoke}.
+     */
+    Environment newFrame() {
+        return new Environment(closure, frameSize);
+    }
+
+    Object invoke(Environment frame) {
+        Object completion = body.execute(frame);
+        return completion == StmtNode.NORMAL ? null : completion;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        Environment frame = newFrame();
+        for (int i = 0; i < arguments.length; i++) {
+            frame.define(i, arguments[i]);
+        }
+        return invoke(frame);
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
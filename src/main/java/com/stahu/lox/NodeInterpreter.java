@@ -0,0 +1,35 @@
+package com.stahu.lox;
+
+import com.stahu.lox.error.RuntimeError;
+
+import java.util.List;
+
+/**
+ * Runs programs on the self-specializing node tree built by
+ * {@link NodeBuilder}. Globals persist between calls for the REPL.
+ */
+class NodeInterpreter {
+    final Globals globals = new Globals();
+    private final OutputSink out;
+
+    NodeInterpreter() {
+        this(Lox.STDOUT);
+    }
+
+    NodeInterpreter(OutputSink out) {
+        this.out = out;
+        Natives.define(globals);
+    }
+
+    void interpret(List<Stmt> statements) {
+        StmtNode[] nodes = new NodeBuilder(globals, out).build(statements);
+        try {
+            for (StmtNode node : nodes) {
+                node.execute(null);
+            }
+        } catch (RuntimeError error) {
+            out.flush();
+            Lox.runtimeError(error);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.stahu.lox;
+
+/**
+ * Instruction set of the bytecode backend. Operands follow the opcode byte
+ * in big-endian order; "u16" operands take two bytes.
+ */
+final class OpCode {
+    static final byte CONSTANT = 0;       // u16 constant index
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte POP = 4;
+    static final byte GET_LOCAL = 5;      // u16 depth, u16 slot
+    static final byte SET_LOCAL = 6;      // u16 depth, u16 slot
+    static final byte DEFINE_LOCAL = 7;   // u16 slot
+    static final byte GET_GLOBAL = 8;     // u16 name constant
+    static final byte SET_GLOBAL = 9;     // u16 name constant
+    static final byte DEFINE_GLOBAL = 10; // u16 name constant
+    static final byte EQUAL = 11;
+    static final byte NOT_EQUAL = 12;
+    static final byte GREATER = 13;
+    static final byte GREATER_EQUAL = 14;
+    static final byte LESS = 15;
+    static final byte LESS_EQUAL = 16;
+    static final byte ADD = 17;
+    static final byte SUBTRACT = 18;
+    static final byte MULTIPLY = 19;
+    static final byte DIVIDE = 20;
+    static final byte NOT = 21;
+    static final byte NEGATE = 22;
+    static final byte PRINT = 23;
+    static final byte JUMP = 24;          // u16 forward offset
+    static final byte JUMP_IF_FALSE = 25; // u16 forward offset, leaves condition
+    static final byte LOOP = 26;          // u16 backward offset
+    static final byte CALL = 27;          // u8 argument count
+    static final byte CLOSURE = 28;       // u16 function constant
+    static final byte ENTER_SCOPE = 29;   // u16 frame size
+    static final byte EXIT_SCOPE = 30;
+    static final byte RETURN = 31;
+
+    private OpCode() {
+    }
+}
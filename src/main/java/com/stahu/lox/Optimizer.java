@@ -0,0 +1,278 @@
+package com.stahu.lox;
+
+import com.stahu.lox.model.Token;
+import com.stahu.lox.model.TokenType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Optional pass over resolved statements. Folds operators whose operands are
+ * literals, replaces reads of local variables that are initialized with a
+ * constant and never assigned, and drops {@code if} and {@code while}
+ * branches whose condition is known. Operations that would fail, such as
+ * division by zero or adding a number to {@code nil}, are left in place so
+ * they still raise their error at run time, on their original line.
+ * <p>
+ * The tree is walked twice. The first walk only records which local slots are
+ * assigned anywhere, counting a second declaration in the same scope, which
+ * reuses the slot, as an assignment; the second substitutes the remaining constants. Both
+ * walks visit every subtree in the same order, so scopes get the same ids.
+ */
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    private static final Stmt EMPTY = new Stmt.Block(List.of(), 0);
+
+    private final List<Integer> scopes = new ArrayList<>();
+    private final Set<Long> declared = new HashSet<>();
+    private final Set<Long> assigned = new HashSet<>();
+    private final Map<Long, Object> constants = new HashMap<>();
+    private int nextScope = 0;
+    private boolean propagating = false;
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        optimizeAll(statements);
+
+        propagating = true;
+        nextScope = 0;
+        return optimizeAll(statements);
+    }
+
+    private List<Stmt> optimizeAll(List<Stmt> statements) {
+        List<Stmt> optimized = new ArrayList<>(statements.size());
+        for (Stmt statement : statements) {
+            Stmt result = optimize(statement);
+            if (result != EMPTY) {
+                optimized.add(result);
+            }
+        }
+        return optimized;
+    }
+
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr == null ? null : expr.accept(this);
+    }
+
+    private void beginScope() {
+        scopes.add(nextScope++);
+    }
+
+    private void endScope() {
+        scopes.remove(scopes.size() - 1);
+    }
+
+    /**
+     * Identifies a local slot by the scope that owns it, so the same slot in
+     * sibling blocks is tracked separately.
+     */
+    private long key(int depth, int slot) {
+        long scope = scopes.get(scopes.size() - 1 - depth);
+        return (scope << 32) | slot;
+    }
+
+    private static boolean isConstant(Expr expr) {
+        return expr instanceof Expr.Literal;
+    }
+
+    private static Object valueOf(Expr expr) {
+        return ((Expr.Literal) expr).value();
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        List<Stmt> statements = optimizeAll(stmt.statements());
+        endScope();
+        return new Stmt.Block(statements, stmt.frameSize());
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression());
+        if (isConstant(expression)) return EMPTY;
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        beginScope();
+        List<Stmt> body = optimizeAll(stmt.body());
+        endScope();
+        return new Stmt.Function(stmt.name(), stmt.params(), body, stmt.slot(), stmt.frameSize());
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition());
+        Stmt thenBranch = optimize(stmt.thenBranch());
+        Stmt elseBranch = stmt.elseBranch() == null ? null : optimize(stmt.elseBranch());
+
+        if (isConstant(condition)) {
+            if (Values.isTruthy(valueOf(condition))) return thenBranch;
+            return elseBranch == null ? EMPTY : elseBranch;
+        }
+        return new Stmt.If(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(optimize(stmt.expression()));
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        return new Stmt.Return(stmt.keyword(), optimize(stmt.value()));
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = optimize(stmt.initializer());
+        if (stmt.slot() >= 0) {
+            long key = key(0, stmt.slot());
+            if (!propagating) {
+                if (!declared.add(key)) {
+                    assigned.add(key);
+                }
+            } else if (!assigned.contains(key) && (initializer == null || isConstant(initializer))) {
+                constants.put(key, initializer == null ? null : valueOf(initializer));
+            }
+        }
+        return new Stmt.Var(stmt.name(), initializer, stmt.slot());
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition());
+        Stmt body = optimize(stmt.body());
+
+        if (isConstant(condition) && !Values.isTruthy(valueOf(condition))) return EMPTY;
+        return new Stmt.While(condition, body);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr value = optimize(expr.value());
+        if (expr.depth() < 0) {
+            return new Expr.Assign(expr.name(), value);
+        }
+        assigned.add(key(expr.depth(), expr.slot()));
+        return new Expr.Assign(expr.name(), value, expr.depth(), expr.slot());
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left());
+        Expr right = optimize(expr.right());
+
+        if (isConstant(left) && isConstant(right)) {
+            Expr folded = fold(expr.operator(), valueOf(left), valueOf(right));
+            if (folded != null) return folded;
+        }
+        return new Expr.Binary(left, expr.operator(), right);
+    }
+
+    /**
+     * Applies a binary operator to constant operands, or returns {@code null}
+     * when evaluating it would raise a runtime error.
+     */
+    private static Expr fold(Token operator, Object left, Object right) {
+        switch (operator.type()) {
+            case BANG_EQUAL: return new Expr.Literal(!Values.isEqual(left, right));
+            case EQUAL_EQUAL: return new Expr.Literal(Values.isEqual(left, right));
+            case PLUS:
+                Object sum = Values.add(left, right);
+                if (sum instanceof ConcatString text) {
+                    // Literals hold plain strings.
+                    sum = text.toString();
+                }
+                return sum == null ? null : new Expr.Literal(sum);
+            default:
+                break;
+        }
+
+        if (!(left instanceof Double leftValue) || !(right instanceof Double rightValue)) return null;
+        switch (operator.type()) {
+            case GREATER: return new Expr.Literal(leftValue > rightValue);
+            case GREATER_EQUAL: return new Expr.Literal(leftValue >= rightValue);
+            case LESS: return new Expr.Literal(leftValue < rightValue);
+            case LESS_EQUAL: return new Expr.Literal(leftValue <= rightValue);
+            case MINUS: return new Expr.Literal(leftValue - rightValue);
+            case STAR: return new Expr.Literal(leftValue * rightValue);
+            case SLASH:
+                if (rightValue == (double) 0) return null;
+                return new Expr.Literal(leftValue / rightValue);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        Expr callee = optimize(expr.callee());
+        List<Expr> arguments = new ArrayList<>(expr.arguments().size());
+        for (Expr argument : expr.arguments()) {
+            arguments.add(optimize(argument));
+        }
+        return new Expr.Call(callee, expr.paren(), arguments);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        // Grouping only matters to the parser.
+        return optimize(expr.expr());
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left());
+        Expr right = optimize(expr.right());
+
+        if (isConstant(left)) {
+            boolean truthy = Values.isTruthy(valueOf(left));
+            boolean isOr = expr.operator().type() == TokenType.OR;
+            return truthy == isOr ? left : right;
+        }
+        return new Expr.Logical(left, expr.operator(), right);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right());
+
+        if (isConstant(right)) {
+            Object value = valueOf(right);
+            switch (expr.operator().type()) {
+                case BANG: return new Expr.Literal(!Values.isTruthy(value));
+                case MINUS:
+                    if (value instanceof Double number) return new Expr.Literal(-number);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new Expr.Unary(expr.operator(), right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth() < 0) return expr;
+
+        long key = key(expr.depth(), expr.slot());
+        if (constants.containsKey(key)) {
+            return new Expr.Literal(constants.get(key));
+        }
+        return new Expr.Variable(expr.name(), expr.depth(), expr.slot());
+    }
+}
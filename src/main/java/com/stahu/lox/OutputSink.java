@@ -0,0 +1,17 @@
+package com.stahu.lox;
+
+/**
+ * Where {@code print} writes. Output may be held back until {@link #flush()},
+ * which the command line calls before it writes an error to stderr, before
+ * each REPL prompt and when the script ends, so output and errors keep their
+ * order.
+ */
+interface OutputSink {
+    void println(String line);
+
+    /**
+     * Writes out everything printed so far and waits until it has been
+     * written.
+     */
+    void flush();
+}
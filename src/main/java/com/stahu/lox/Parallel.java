@@ -0,0 +1,142 @@
+package com.stahu.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Data-parallel natives run on {@link java.util.concurrent.ForkJoinPool#commonPool()}.
+ * Work is split in halves down to chunks of about 1/{@link #CHUNKS} of the
+ * input, and each chunk calls the Lox function on a forked
+ * {@link Interpreter}. The split depends only on the input size, so a reduce
+ * combines values in the same order on every run and every machine.
+ */
+final class Parallel {
+    private static final int CHUNKS = 256;
+
+    private Parallel() {
+    }
+
+    private static int chunkSize(int size) {
+        return Math.max(1, size / CHUNKS);
+    }
+
+    static LoxList map(Interpreter interpreter, List<Object> input, LoxCallable function) {
+        Object[] results = new Object[input.size()];
+        new MapChunk(interpreter, input, function, results, 0, input.size(), chunkSize(input.size())).invoke();
+        // Copied, since a Lox list can grow.
+        return new LoxList(new ArrayList<>(Arrays.asList(results)));
+    }
+
+    static Object reduce(Interpreter interpreter, List<Object> input, Object identity, LoxCallable combine) {
+        if (input.isEmpty()) return identity;
+        return new ReduceChunk(interpreter, input, combine, 0, input.size(), chunkSize(input.size())).invoke();
+    }
+
+    static void forRange(Interpreter interpreter, int start, int end, LoxCallable body) {
+        if (start >= end) return;
+        new ForChunk(interpreter, body, start, end, chunkSize(end - start)).invoke();
+    }
+
+    private static final class MapChunk extends RecursiveAction {
+        private final Interpreter interpreter;
+        private final List<Object> input;
+        private final LoxCallable function;
+        private final Object[] results;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        MapChunk(Interpreter interpreter, List<Object> input, LoxCallable function,
+                 Object[] results, int from, int to, int chunk) {
+            this.interpreter = interpreter;
+            this.input = input;
+            this.function = function;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunk) {
+                Interpreter worker = interpreter.fork();
+                for (int i = from; i < to; i++) {
+                    results[i] = function.call1(worker, input.get(i));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new MapChunk(interpreter, input, function, results, from, middle, chunk),
+                    new MapChunk(interpreter, input, function, results, middle, to, chunk));
+        }
+    }
+
+    private static final class ReduceChunk extends RecursiveTask<Object> {
+        private final Interpreter interpreter;
+        private final List<Object> input;
+        private final LoxCallable combine;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        ReduceChunk(Interpreter interpreter, List<Object> input, LoxCallable combine, int from, int to, int chunk) {
+            this.interpreter = interpreter;
+            this.input = input;
+            this.combine = combine;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected Object compute() {
+            Interpreter worker = interpreter.fork();
+            if (to - from <= chunk) {
+                Object accumulator = input.get(from);
+                for (int i = from + 1; i < to; i++) {
+                    accumulator = combine.call2(worker, accumulator, input.get(i));
+                }
+                return accumulator;
+            }
+            int middle = (from + to) >>> 1;
+            ReduceChunk right = new ReduceChunk(interpreter, input, combine, middle, to, chunk);
+            right.fork();
+            Object left = new ReduceChunk(interpreter, input, combine, from, middle, chunk).compute();
+            return combine.call2(worker, left, right.join());
+        }
+    }
+
+    private static final class ForChunk extends RecursiveAction {
+        private final Interpreter interpreter;
+        private final LoxCallable body;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        ForChunk(Interpreter interpreter, LoxCallable body, int from, int to, int chunk) {
+            this.interpreter = interpreter;
+            this.body = body;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunk) {
+                Interpreter worker = interpreter.fork();
+                for (int i = from; i < to; i++) {
+                    body.call1(worker, (double) i);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ForChunk(interpreter, body, from, middle, chunk),
+                    new ForChunk(interpreter, body, middle, to, chunk));
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package com.stahu.lox;
 
 import com.stahu.lox.model.Token;
+import com.stahu.lox.model.TokenBuffer;
 import com.stahu.lox.model.TokenType;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static com.stahu.lox.model.TokenType.*;
 
@@ -14,11 +16,85 @@ class Parser {
 
     private static class ParseError extends RuntimeException {}
 
-    private final List<Token> tokens;
+    private enum Precedence {
+        NONE,
+        OR,
+        AND,
+        EQUALITY,   // == !=
+        COMPARISON, // < > <= >=
+        TERM,       // + -
+        FACTOR,     // * /
+        UNARY,      // ! -
+        CALL;       // ()
+
+        private static final Precedence[] values = values();
+
+        Precedence next() {
+            return values[ordinal() + 1];
+        }
+    }
+
+    private interface PrefixRule {
+        Expr parse(Parser parser);
+    }
+
+    private interface InfixRule {
+        Expr parse(Parser parser, Expr left);
+    }
+
+    private record Rule(PrefixRule prefix, InfixRule infix, Precedence precedence) {}
+
+    // Parse rules indexed by TokenType ordinal.
+    private static final Rule[] rules = new Rule[TokenType.values().length];
+
+    static {
+        Arrays.fill(rules, new Rule(null, null, Precedence.NONE));
+        rules[LEFT_PAREN.ordinal()]    = new Rule(Parser::grouping, Parser::call, Precedence.CALL);
+        rules[MINUS.ordinal()]         = new Rule(Parser::unary, Parser::binary, Precedence.TERM);
+        rules[PLUS.ordinal()]          = new Rule(null, Parser::binary, Precedence.TERM);
+        rules[SLASH.ordinal()]         = new Rule(null, Parser::binary, Precedence.FACTOR);
+        rules[STAR.ordinal()]          = new Rule(null, Parser::binary, Precedence.FACTOR);
+        rules[BANG.ordinal()]          = new Rule(Parser::unary, null, Precedence.NONE);
+        rules[BANG_EQUAL.ordinal()]    = new Rule(null, Parser::binary, Precedence.EQUALITY);
+        rules[EQUAL_EQUAL.ordinal()]   = new Rule(null, Parser::binary, Precedence.EQUALITY);
+        rules[GREATER.ordinal()]       = new Rule(null, Parser::binary, Precedence.COMPARISON);
+        rules[GREATER_EQUAL.ordinal()] = new Rule(null, Parser::binary, Precedence.COMPARISON);
+        rules[LESS.ordinal()]          = new Rule(null, Parser::binary, Precedence.COMPARISON);
+        rules[LESS_EQUAL.ordinal()]    = new Rule(null, Parser::binary, Precedence.COMPARISON);
+        rules[IDENTIFIER.ordinal()]    = new Rule(Parser::variable, null, Precedence.NONE);
+        rules[STRING.ordinal()]        = new Rule(Parser::literal, null, Precedence.NONE);
+        rules[NUMBER.ordinal()]        = new Rule(Parser::literal, null, Precedence.NONE);
+        rules[AND.ordinal()]           = new Rule(null, Parser::logical, Precedence.AND);
+        rules[OR.ordinal()]            = new Rule(null, Parser::logical, Precedence.OR);
+        rules[FALSE.ordinal()]         = new Rule(Parser::literal, null, Precedence.NONE);
+        rules[NIL.ordinal()]           = new Rule(Parser::literal, null, Precedence.NONE);
+        rules[TRUE.ordinal()]          = new Rule(Parser::literal, null, Precedence.NONE);
+    }
+
+    private final TokenBuffer tokens;
+    private final Scanner scanner;
+    private final ErrorReporter reporter;
     private int current = 0;
 
-    Parser(List<Token> tokens) {
+    Parser(TokenBuffer tokens) {
+        this(tokens, Lox.CONSOLE);
+    }
+
+    Parser(TokenBuffer tokens, ErrorReporter reporter) {
         this.tokens = tokens;
+        this.scanner = null;
+        this.reporter = reporter;
+    }
+
+    /**
+     * Creates a parser that pulls tokens from {@code scanner} as it goes
+     * instead of waiting for the whole source to be scanned.
+     */
+    Parser(Scanner scanner) {
+        this.tokens = scanner.tokens();
+        this.scanner = scanner;
+        this.reporter = Lox.CONSOLE;
+        scanner.scanThrough(0);
     }
 
     List<Stmt> parse() {
@@ -29,6 +105,20 @@ class Parser {
         return statements;
     }
 
+    /**
+     * Parses one top-level declaration at a time and hands each to
+     * {@code sink} as soon as it is complete; {@code null} stands for a
+     * declaration with a syntax error. Tokens of finished declarations are
+     * discarded.
+     */
+    void parse(Consumer<Stmt> sink) {
+        while (!isAtEnd()) {
+            Stmt statement = declaration();
+            tokens.discardBefore(current - 1);
+            sink.accept(statement);
+        }
+    }
+
     private Expr expression() {
         return assignment();
     }
@@ -201,7 +291,7 @@ class Parser {
     }
 
     private Expr assignment() {
-        Expr expr = or();
+        Expr expr = parsePrecedence(Precedence.OR);
 
         if (match(EQUAL)) {
             Token equals = previous();
@@ -216,87 +306,46 @@ class Parser {
         return expr;
     }
 
-    private Expr or() {
-        Expr expr = and();
-
-        while (match(OR)) {
-            Token operator = previous();
-            Expr right = and();
-            expr = new Expr.Logical(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr and() {
-        Expr expr = equality();
-
-        while (match(AND)) {
-            Token operator = previous();
-            Expr right = equality();
-            expr = new Expr.Logical(expr, operator, right);
+    /**
+     * Parses an expression whose operators bind at least as tightly as
+     * {@code precedence}: the current token's prefix rule starts it, then
+     * infix rules extend it while the next operator is strong enough.
+     */
+    private Expr parsePrecedence(Precedence precedence) {
+        PrefixRule prefix = rules[tokens.type(current).ordinal()].prefix();
+        if (prefix == null) {
+            throw error(peek(), "Expect expression.");
         }
+        advance();
+        Expr expr = prefix.parse(this);
 
-        return expr;
-    }
-
-    private Expr equality() {
-        Expr expr = comparison();
-
-        while (match(BANG_EQUAL, EQUAL_EQUAL)) {
-            Token operator = previous();
-            Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-        return expr;
-    }
-
-    private Expr comparison() {
-        Expr expr = term();
-
-        while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-            Token operator = previous();
-            Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
+        Rule rule;
+        while (precedence.ordinal() <= (rule = rules[tokens.type(current).ordinal()]).precedence().ordinal()) {
+            advance();
+            expr = rule.infix().parse(this, expr);
         }
         return expr;
     }
 
-    private Expr term() {
-        Expr expr = factor();
-
-        while (match(MINUS, PLUS)) {
-            Token operator = previous();
-            Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
+    private Expr binary(Expr left) {
+        Token operator = previous();
+        Expr right = parsePrecedence(rules[operator.type().ordinal()].precedence().next());
+        return new Expr.Binary(left, operator, right);
     }
 
-    private Expr factor() {
-        Expr expr = unary();
-
-        while (match(SLASH, STAR)) {
-            Token operator = previous();
-            Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
+    private Expr logical(Expr left) {
+        Token operator = previous();
+        Expr right = parsePrecedence(rules[operator.type().ordinal()].precedence().next());
+        return new Expr.Logical(left, operator, right);
     }
 
     private Expr unary() {
-        if (match(BANG, MINUS)) {
-            Token operator = previous();
-            Expr right = unary();
-            return new Expr.Unary(operator, right);
-        }
-
-        return call();
+        Token operator = previous();
+        Expr right = parsePrecedence(Precedence.UNARY);
+        return new Expr.Unary(operator, right);
     }
 
-    private Expr finishCall(Expr callee) {
+    private Expr call(Expr callee) {
         List<Expr> arguments = new ArrayList<>();
         if (!check(RIGHT_PAREN)) {
             do {
@@ -313,57 +362,37 @@ class Parser {
         return new Expr.Call(callee, paren, arguments);
     }
 
-    private Expr call() {
-        Expr expr = primary();
+    private Expr grouping() {
+        Expr expr = expression();
+        consume(RIGHT_PAREN, "Expect ')' after expression.");
+        return new Expr.Grouping(expr);
+    }
 
-        while (true) {
-            if (match(LEFT_PAREN)) {
-                expr = finishCall(expr);
-            } else {
-                break;
-            }
+    private Expr literal() {
+        switch (tokens.type(current - 1)) {
+            case FALSE: return new Expr.Literal(false);
+            case TRUE: return new Expr.Literal(true);
+            case NIL: return new Expr.Literal(null);
+            default: return new Expr.Literal(tokens.literal(current - 1));
         }
-
-        return expr;
     }
 
-    private Expr primary() {
-        if (match(FALSE)) {
-            return new Expr.Literal(false);
-        }
-        if (match(TRUE)) {
-            return new Expr.Literal(true);
-        }
-        if (match(NIL)) {
-            return new Expr.Literal(null);
-        }
-        if (match(IDENTIFIER)) {
-            return new Expr.Variable(previous());
-        }
-        if (match(NUMBER, STRING)) {
-            return new Expr.Literal(previous().literal());
-        }
-        if (match(LEFT_PAREN)) {
-            Expr expr = expression();
-            consume(RIGHT_PAREN, "Expect ')' after expression.");
-            return new Expr.Grouping(expr);
-        }
-        throw error(peek(), "Expect expression.");
+    private Expr variable() {
+        return new Expr.Variable(previous());
     }
 
-    private boolean match(TokenType... types) {
-        for (TokenType type : types) {
-            if (check(type)) {
-                advance();
-                return true;
-            }
+    private boolean match(TokenType type) {
+        if (check(type)) {
+            advance();
+            return true;
         }
         return false;
     }
 
     private Token consume(TokenType type, String message) {
         if (check(type)) {
-            return advance();
+            advance();
+            return previous();
         }
 
         throw error(peek(), message);
@@ -371,28 +400,31 @@ class Parser {
 
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().type() == type;
+        return tokens.type(current) == type;
     }
 
-    private Token advance() {
-        if (!isAtEnd()) current++;
-        return previous();
+    private void advance() {
+        if (isAtEnd()) return;
+        current++;
+        if (scanner != null) {
+            scanner.scanThrough(current);
+        }
     }
 
     private boolean isAtEnd() {
-        return peek().type() == EOF;
+        return tokens.type(current) == EOF;
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return tokens.token(current);
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.token(current - 1);
     }
 
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        reporter.error(token, message);
         return new ParseError();
     }
 
@@ -400,8 +432,8 @@ class Parser {
         advance();
 
         while (!isAtEnd()) {
-            if (previous().type() == SEMICOLON) return;
-            switch (peek().type()) {
+            if (tokens.type(current - 1) == SEMICOLON) return;
+            switch (tokens.type(current)) {
                 case CLASS,
                      FUN,
                      VAR,
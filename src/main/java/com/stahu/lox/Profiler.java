@@ -0,0 +1,154 @@
+package com.stahu.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sampling profiler for the tree walker. The interpreter keeps a shadow stack
+ * of the Lox functions being run and the line each of them last reached; a
+ * background thread copies it every {@link #INTERVAL_MICROS} microseconds.
+ * <p>
+ * Only the interpreter thread writes the stack. Frames are filled in before
+ * {@link #depth} is published with release semantics, which is cheaper than a
+ * volatile write on every call, so the sampler always sees complete frames
+ * below the depth it read, though their lines may be a little behind.
+ */
+final class Profiler {
+    static final int INTERVAL_MICROS = Integer.getInteger("lox.profile.interval", 1000);
+
+    private static final String SCRIPT = "<script>";
+    private static final VarHandle DEPTH;
+
+    static {
+        try {
+            DEPTH = MethodHandles.lookup().findVarHandle(Profiler.class, "depth", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private String[] names = new String[64];
+    private int[] lines = new int[64];
+    private int depth = 0;
+
+    private final Map<String, Long> stacks = new HashMap<>();
+    private final Map<String, Long> selfNanos = new HashMap<>();
+    private final Map<String, Long> totalNanos = new HashMap<>();
+    private long samples = 0;
+    private long sampledNanos = 0;
+    private Thread sampler;
+
+    Profiler() {
+        names[0] = SCRIPT;
+        depth = 1;
+    }
+
+    void enter(String name, int line) {
+        int top = depth;
+        if (top == names.length) {
+            names = Arrays.copyOf(names, top * 2);
+            lines = Arrays.copyOf(lines, top * 2);
+        }
+        names[top] = name;
+        lines[top] = line;
+        DEPTH.setRelease(this, top + 1);
+    }
+
+    /**
+     * Replaces the top frame for a tail call, which reuses the caller's frame.
+     */
+    void replace(String name, int line) {
+        int top = depth - 1;
+        names[top] = name;
+        lines[top] = line;
+    }
+
+    void exit() {
+        DEPTH.setRelease(this, depth - 1);
+    }
+
+    void line(int line) {
+        lines[depth - 1] = line;
+    }
+
+    void start() {
+        sampler = Thread.ofPlatform().name("lox-profiler").daemon().start(this::sample);
+    }
+
+    private void sample() {
+        long last = System.nanoTime();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(INTERVAL_MICROS / 1000, INTERVAL_MICROS % 1000 * 1000);
+                long now = System.nanoTime();
+                record(now - last);
+                last = now;
+            }
+        } catch (InterruptedException e) {
+            // Stopped.
+        }
+    }
+
+    private void record(long nanos) {
+        int top = (int) DEPTH.getAcquire(this);
+        String[] frameNames = names;
+        int[] frameLines = lines;
+
+        StringBuilder stack = new StringBuilder();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < top; i++) {
+            if (i > 0) stack.append(';');
+            stack.append(frameNames[i]).append(':').append(frameLines[i]);
+            // Recursive frames count once towards a function's total.
+            if (seen.add(frameNames[i])) {
+                totalNanos.merge(frameNames[i], nanos, Long::sum);
+            }
+        }
+        selfNanos.merge(frameNames[top - 1], nanos, Long::sum);
+        stacks.merge(stack.toString(), 1L, Long::sum);
+        samples++;
+        sampledNanos += nanos;
+    }
+
+    /**
+     * Stops sampling, prints the time spent in each function and writes the
+     * sampled stacks to {@code collapsed} in the folded format flame graph
+     * tools read, one stack per line followed by its sample count.
+     */
+    void stop(Path collapsed, PrintStream report) throws IOException {
+        sampler.interrupt();
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try (Writer out = Files.newBufferedWriter(collapsed)) {
+            for (Map.Entry<String, Long> entry : stacks.entrySet()) {
+                out.write(entry.getKey() + " " + entry.getValue() + "\n");
+            }
+        }
+
+        report.printf("Profile: %d samples over %.1f ms, stacks written to %s%n",
+                samples, sampledNanos / 1e6, collapsed);
+        report.printf("%12s %12s  %s%n", "self ms", "total ms", "function");
+        List<String> functions = new ArrayList<>(totalNanos.keySet());
+        functions.sort((a, b) -> Long.compare(selfNanos.getOrDefault(b, 0L), selfNanos.getOrDefault(a, 0L)));
+        for (String function : functions) {
+            report.printf("%12.1f %12.1f  %s%n",
+                    selfNanos.getOrDefault(function, 0L) / 1e6, totalNanos.get(function) / 1e6, function);
+        }
+    }
+}
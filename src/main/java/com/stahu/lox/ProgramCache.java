@@ -0,0 +1,147 @@
+package com.stahu.lox;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Resolved programs cached on disk in a {@code .loxcache} directory next to
+ * the script. An entry records the SHA-256 of the source and of the
+ * interpreter's own code. It is used only when both match, so editing the
+ * script or rebuilding the interpreter invalidates it without any cleanup
+ * step. Entries are read through a memory map and replaced atomically.
+ */
+final class ProgramCache {
+    static final String DIRECTORY = ".loxcache";
+
+    private static final int MAGIC = 0x4C4F5843; // "LOXC"
+    // Bump when the serialized form changes.
+    private static final int FORMAT = 2;
+    // Null when the interpreter's code cannot be read, which disables caching.
+    private static final byte[] VERSION = interpreterVersion();
+
+    private final Path file;
+    private final byte[] hash;
+
+    ProgramCache(Path script, ByteBuffer source) {
+        Path directory = script.toAbsolutePath().getParent().resolve(DIRECTORY);
+        this.file = directory.resolve(script.getFileName() + ".bin");
+        this.hash = sha256(source);
+    }
+
+    /**
+     * Returns the cached statements, or {@code null} when there is no
+     * usable entry for this source.
+     */
+    List<Stmt> load() {
+        if (VERSION == null) return null;
+        try (FileChannel channel = FileChannel.open(file)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT) return null;
+            if (!matches(in, VERSION) || !matches(in, hash)) return null;
+            return AstSerializer.deserialize(in);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException
+                 | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            // Unreadable or damaged entry; parse again and overwrite it.
+            return null;
+        }
+    }
+
+    /**
+     * Writes the entry. Failing to write, for example in a read-only
+     * directory, only costs the next run a parse.
+     */
+    void store(List<Stmt> statements) {
+        if (VERSION == null) return;
+        try {
+            Files.createDirectories(file.getParent());
+            // Write aside and rename, so concurrent runs never see half an entry.
+            Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT);
+                    out.writeInt(VERSION.length);
+                    out.write(VERSION);
+                    out.writeInt(hash.length);
+                    out.write(hash);
+                    AstSerializer.serialize(statements, out);
+                }
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            // Caching is best effort.
+        }
+    }
+
+    private static boolean matches(ByteBuffer in, byte[] expected) {
+        int length = in.getInt();
+        if (length != expected.length) return false;
+        byte[] actual = new byte[length];
+        in.get(actual);
+        return Arrays.equals(actual, expected);
+    }
+
+    private static byte[] sha256(ByteBuffer source) {
+        MessageDigest digest = sha256();
+        digest.update(source.duplicate());
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hashes the jar the interpreter runs from, or its class files when it
+     * runs from a directory, so that any rebuild changes the result.
+     */
+    private static byte[] interpreterVersion() {
+        try {
+            Path code = Path.of(ProgramCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            MessageDigest digest = sha256();
+            if (!Files.isDirectory(code)) {
+                digest.update(Files.readAllBytes(code));
+                return digest.digest();
+            }
+            Path classes = code.resolve(ProgramCache.class.getPackageName().replace('.', '/'));
+            try (Stream<Path> files = Files.walk(classes)) {
+                Iterator<Path> sorted = files.filter(file -> file.toString().endsWith(".class")).sorted().iterator();
+                while (sorted.hasNext()) {
+                    Path file = sorted.next();
+                    digest.update(classes.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update(Files.readAllBytes(file));
+                }
+            }
+            return digest.digest();
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            // No code source, or not one on the file system.
+            return null;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.stahu.lox;
+
+import com.stahu.lox.model.Symbol;
+import com.stahu.lox.model.Token;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Static pass run between parsing and interpreting. Rewrites every local
+ * {@link Expr.Variable} and {@link Expr.Assign} into a copy carrying its
+ * lexical distance (number of enclosing environments to skip) and slot index
+ * within that environment. Variables left with a negative depth are globals.
+ * Declarations get their slot, and blocks and functions the size of the frame
+ * they allocate.
+ * <p>
+ * Names are resolved the way the environments they replace looked them up:
+ * declaring a name again in the same scope reuses its slot, and a variable's
+ * initializer is resolved before the variable is declared, so it sees any
+ * outer variable of the same name. A function body runs only once it is
+ * called, so a name it can't otherwise resolve may refer to one its enclosing
+ * scopes declare further on, as block-local functions calling each other need.
+ */
+class Resolver implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+    private enum FunctionType {
+        NONE,
+        FUNCTION
+    }
+
+    private static class Scope {
+        final Map<Symbol, Integer> slots = new HashMap<>();
+        // Names declared further on in the scope, with the slots reserved for them.
+        final Map<Symbol, Integer> later = new HashMap<>();
+        // How many functions the scope is nested in.
+        final int function;
+        int size = 0;
+
+        Scope(int function) {
+            this.function = function;
+        }
+    }
+
+    private final List<Scope> scopes = new ArrayList<>();
+    private final ErrorReporter reporter;
+    private FunctionType currentFunction = FunctionType.NONE;
+    private int functionDepth = 0;
+    // Globals declared so far, which names declared further on don't shadow.
+    private final Set<Symbol> globals = new HashSet<>();
+
+    Resolver() {
+        this(Lox.CONSOLE);
+    }
+
+    Resolver(ErrorReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    List<Stmt> resolve(List<Stmt> statements) {
+        List<Stmt> resolved = new ArrayList<>(statements.size());
+        for (Stmt statement : statements) {
+            resolved.add(resolve(statement));
+        }
+        return resolved;
+    }
+
+    Stmt resolve(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Expr resolve(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private List<Expr> resolveAll(List<Expr> exprs) {
+        List<Expr> resolved = new ArrayList<>(exprs.size());
+        for (Expr expr : exprs) {
+            resolved.add(resolve(expr));
+        }
+        return resolved;
+    }
+
+    private void beginScope() {
+        scopes.add(new Scope(functionDepth));
+    }
+
+    /**
+     * Pops the innermost scope and returns how many slots its frame needs.
+     */
+    private int endScope() {
+        return scopes.remove(scopes.size() - 1).size;
+    }
+
+    /**
+     * Declares a name in the innermost scope and returns its slot, or -1 when
+     * the declaration is global. A name already declared in the scope keeps
+     * its slot.
+     */
+    private int declare(Token name) {
+        if (scopes.isEmpty()) {
+            globals.add(name.symbol());
+            return -1;
+        }
+
+        Scope scope = scopes.get(scopes.size() - 1);
+        Integer existing = scope.slots.get(name.symbol());
+        if (existing != null) return existing;
+        Integer reserved = scope.later.remove(name.symbol());
+        int slot = reserved != null ? reserved : scope.size++;
+        scope.slots.put(name.symbol(), slot);
+        return slot;
+    }
+
+    /**
+     * Reserves slots in the innermost scope for the variables and functions
+     * {@code statements} declare, so function bodies before a declaration can
+     * refer to it.
+     */
+    private void reserve(List<Stmt> statements) {
+        Scope scope = scopes.get(scopes.size() - 1);
+        for (Stmt statement : statements) {
+            Token name = null;
+            if (statement instanceof Stmt.Var var) {
+                name = var.name();
+            } else if (statement instanceof Stmt.Function function) {
+                name = function.name();
+            }
+            if (name == null || scope.slots.containsKey(name.symbol())
+                    || scope.later.containsKey(name.symbol())) {
+                continue;
+            }
+            scope.later.put(name.symbol(), scope.size++);
+        }
+    }
+
+    /**
+     * Declares a parameter in a new slot even if another parameter has the
+     * same name, since arguments are stored by position. The name refers to
+     * the last of them.
+     */
+    private void declareParameter(Token name) {
+        Scope scope = scopes.get(scopes.size() - 1);
+        scope.slots.put(name.symbol(), scope.size++);
+    }
+
+    private int[] resolveLocal(Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).slots.get(name.symbol());
+            if (slot != null) {
+                return new int[] {scopes.size() - 1 - i, slot};
+            }
+        }
+        if (!globals.contains(name.symbol())) {
+            for (int i = scopes.size() - 1; i >= 0; i--) {
+                Scope scope = scopes.get(i);
+                Integer slot = scope.later.get(name.symbol());
+                if (slot != null && scope.function < functionDepth) {
+                    return new int[] {scopes.size() - 1 - i, slot};
+                }
+            }
+        }
+        // Not found. Assume it is global.
+        return null;
+    }
+
+    private Stmt.Function resolveFunction(Stmt.Function function, int slot, FunctionType type) {
+        FunctionType enclosingFunction = currentFunction;
+        currentFunction = type;
+        functionDepth++;
+
+        beginScope();
+        for (Token param : function.params()) {
+            declareParameter(param);
+        }
+        reserve(function.body());
+        List<Stmt> body = resolve(function.body());
+        int frameSize = endScope();
+
+        functionDepth--;
+        currentFunction = enclosingFunction;
+        return new Stmt.Function(function.name(), function.params(), body, slot, frameSize);
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        reserve(stmt.statements());
+        List<Stmt> statements = resolve(stmt.statements());
+        return new Stmt.Block(statements, endScope());
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        return new Stmt.Expression(resolve(stmt.expression()));
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        int slot = declare(stmt.name());
+        return resolveFunction(stmt, slot, FunctionType.FUNCTION);
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = resolve(stmt.condition());
+        Stmt thenBranch = resolve(stmt.thenBranch());
+        Stmt elseBranch = null;
+        if (stmt.elseBranch() != null) {
+            elseBranch = resolve(stmt.elseBranch());
+        }
+        return new Stmt.If(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(resolve(stmt.expression()));
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        if (currentFunction == FunctionType.NONE) {
+            reporter.error(stmt.keyword(), "Can't return from top-level code.");
+        }
+
+        Expr value = null;
+        if (stmt.value() != null) {
+            value = resolve(stmt.value());
+        }
+        return new Stmt.Return(stmt.keyword(), value);
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = null;
+        if (stmt.initializer() != null) {
+            initializer = resolve(stmt.initializer());
+        }
+        int slot = declare(stmt.name());
+        return new Stmt.Var(stmt.name(), initializer, slot);
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        return new Stmt.While(resolve(stmt.condition()), resolve(stmt.body()));
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr value = resolve(expr.value());
+        int[] local = resolveLocal(expr.name());
+        if (local == null) {
+            return new Expr.Assign(expr.name(), value);
+        }
+        return new Expr.Assign(expr.name(), value, local[0], local[1]);
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        return new Expr.Binary(resolve(expr.left()), expr.operator(), resolve(expr.right()));
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        return new Expr.Call(resolve(expr.callee()), expr.paren(), resolveAll(expr.arguments()));
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        return new Expr.Grouping(resolve(expr.expr()));
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        return new Expr.Logical(resolve(expr.left()), expr.operator(), resolve(expr.right()));
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        return new Expr.Unary(expr.operator(), resolve(expr.right()));
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        int[] local = resolveLocal(expr.name());
+        if (local == null) {
+            return expr;
+        }
+        return new Expr.Variable(expr.name(), local[0], local[1]);
+    }
+}
@@ -1,5 +1,10 @@
 package com.stahu.lox;
 
+/**
+ * Unwinds a {@code return} in the closure backend. The tree walker reports it
+ * as an {@link Interpreter.Completion} and the node backend as the completion
+ * value of a {@link StmtNode} instead.
+ */
 class Return extends RuntimeException {
     final Object value;
 
@@ -1,22 +1,23 @@
 package com.stahu.lox;
 
-import com.stahu.lox.model.Token;
+import com.stahu.lox.model.TokenBuffer;
 import com.stahu.lox.model.TokenType;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import static com.stahu.lox.model.TokenType.*;
 
 public class Scanner {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private final CharSequence source;
+    private final TokenBuffer tokens;
     private int start = 0;
     private int current = 0;
     private int line = 1;
     private static final Map<String, TokenType> keywords;
+    // Keywords grouped by first letter, so identifiers are matched in place.
+    private static final String[][] keywordsByInitial = new String[128][0];
 
     static {
         keywords = new HashMap<>();
@@ -36,21 +37,55 @@ public class Scanner {
         keywords.put("true",   TRUE);
         keywords.put("var",    VAR);
         keywords.put("while",  WHILE);
+
+        for (String keyword : keywords.keySet()) {
+            String[] group = keywordsByInitial[keyword.charAt(0)];
+            group = Arrays.copyOf(group, group.length + 1);
+            group[group.length - 1] = keyword;
+            keywordsByInitial[keyword.charAt(0)] = group;
+        }
     }
 
-    Scanner(String source) {
+    private final ErrorReporter reporter;
+
+    Scanner(CharSequence source) {
+        this(source, Lox.CONSOLE);
+    }
+
+    Scanner(CharSequence source, ErrorReporter reporter) {
         this.source = source;
+        this.tokens = new TokenBuffer(source);
+        this.reporter = reporter;
     }
 
-    public List<Token> scanTokens() {
+    public TokenBuffer scanTokens() {
         while (!isAtEnd()) {
             start = current;
             scanToken();
         }
-        tokens.add(new Token(EOF, "", null, line));
+        tokens.add(EOF, current, 0, line);
         return tokens;
     }
 
+    TokenBuffer tokens() {
+        return tokens;
+    }
+
+    /**
+     * Scans only as far as needed for the buffer to hold the token at
+     * {@code index}, so a parser can pull tokens on demand.
+     */
+    void scanThrough(int index) {
+        while (tokens.end() <= index) {
+            if (isAtEnd()) {
+                tokens.add(EOF, current, 0, line);
+                return;
+            }
+            start = current;
+            scanToken();
+        }
+    }
+
     private boolean isAtEnd() {
         return current >= source.length();
     }
@@ -115,19 +150,45 @@ public class Scanner {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    Lox.error(line, "Unexpected character.");
+                    skipContinuationBytes(c);
+                    reporter.error(line, "Unexpected character.");
                 }
         }
     }
 
+    /**
+     * Skips the rest of a multi-byte UTF-8 sequence led by {@code c} when
+     * scanning raw bytes, so a non-ASCII character is reported once.
+     */
+    private void skipContinuationBytes(char c) {
+        if (!(source instanceof ByteSource) || c < 0xC0) return;
+        while (!isAtEnd() && (peek() & 0xC0) == 0x80) {
+            advance();
+        }
+    }
+
     private void identifier() {
         while (isAlphaNumeric(peek()))
             advance();
 
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null) type = IDENTIFIER;
-        addToken(type);
+        addToken(identifierType());
+    }
+
+    private TokenType identifierType() {
+        int length = current - start;
+        for (String keyword : keywordsByInitial[source.charAt(start)]) {
+            if (keyword.length() == length && matchesSource(keyword)) {
+                return keywords.get(keyword);
+            }
+        }
+        return IDENTIFIER;
+    }
+
+    private boolean matchesSource(String keyword) {
+        for (int i = 1; i < keyword.length(); i++) {
+            if (source.charAt(start + i) != keyword.charAt(i)) return false;
+        }
+        return true;
     }
 
     private void number() {
@@ -141,8 +202,8 @@ public class Scanner {
             while (isDigit(peek())) advance();
         }
 
-        addToken(NUMBER,
-                Double.parseDouble(source.substring(start, current)));
+        // The value is parsed from the source when the token is materialized.
+        addToken(NUMBER);
     }
 
     private void string() {
@@ -152,16 +213,14 @@ public class Scanner {
         }
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            reporter.error(line, "Unterminated string.");
             return;
         }
 
         // The closing ".
         advance();
 
-        // Trim the surrounding quotes.
-        String value = source.substring(start + 1, current - 1);
-        addToken(STRING, value);
+        addToken(STRING);
     }
 
     private char advance() {
@@ -169,12 +228,7 @@ public class Scanner {
     }
 
     private void addToken(TokenType type) {
-        addToken(type, null);
-    }
-
-    private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        tokens.add(type, start, current - start, line);
     }
 
     private boolean match(char expected) {
@@ -25,7 +25,12 @@ interface Stmt {
         }
     }
 
-    record Function(Token name, List<Token> params, List<Stmt> body) implements Stmt {
+    record Function(Token name, List<Token> params, List<Stmt> body,
+                    int slot, int frameSize) implements Stmt {
+        Function(Token name, List<Token> params, List<Stmt> body) {
+            this(name, params, body, -1, 0);
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitFunctionStmt(this);
@@ -53,7 +58,11 @@ interface Stmt {
         }
     }
 
-    record Var(Token name, Expr initializer) implements Stmt {
+    record Var(Token name, Expr initializer, int slot) implements Stmt {
+        Var(Token name, Expr initializer) {
+            this(name, initializer, -1);
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitVarStmt(this);
@@ -67,7 +76,11 @@ interface Stmt {
         }
     }
 
-    record Block(List<Stmt> statements) implements Stmt {
+    record Block(List<Stmt> statements, int frameSize) implements Stmt {
+        Block(List<Stmt> statements) {
+            this(statements, 0);
+        }
+
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitBlockStmt(this);
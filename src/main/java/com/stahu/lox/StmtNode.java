@@ -0,0 +1,251 @@
+package com.stahu.lox;
+
+import com.stahu.lox.model.Symbol;
+import com.stahu.lox.model.Token;
+
+/**
+ * Executable statement node. Statements receive the current frame explicitly
+ * instead of reading it from a mutable interpreter field.
+ * <p>
+ * Executing a statement yields its completion: {@link #NORMAL} when control
+ * carries on to the next statement, otherwise the value of the
+ * {@code return} it ran, which enclosing statements pass up to the call.
+ */
+abstract class StmtNode extends Node {
+    static final Object NORMAL = new Object();
+
+    abstract Object execute(Environment frame);
+
+    static final class Expression extends StmtNode {
+        private ExprNode expression;
+
+        Expression(ExprNode expression) {
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            expression.execute(frame);
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            expression = (ExprNode) replacement;
+        }
+    }
+
+    static final class Print extends StmtNode {
+        private final OutputSink out;
+        private ExprNode expression;
+
+        Print(OutputSink out, ExprNode expression) {
+            this.out = out;
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            out.println(Values.stringify(expression.execute(frame)));
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            expression = (ExprNode) replacement;
+        }
+    }
+
+    static final class DefineLocal extends StmtNode {
+        private final int slot;
+        private ExprNode initializer;
+
+        DefineLocal(int slot, ExprNode initializer) {
+            this.slot = slot;
+            this.initializer = adopt(initializer);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            frame.define(slot, initializer == null ? null : initializer.execute(frame));
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            initializer = (ExprNode) replacement;
+        }
+    }
+
+    static final class DefineGlobal extends StmtNode {
+        private final Globals globals;
+        private final Symbol name;
+        private ExprNode initializer;
+
+        DefineGlobal(Globals globals, Symbol name, ExprNode initializer) {
+            this.globals = globals;
+            this.name = name;
+            this.initializer = adopt(initializer);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            globals.define(name, initializer == null ? null : initializer.execute(frame));
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            initializer = (ExprNode) replacement;
+        }
+    }
+
+    /**
+     * Runs statements in the current frame; used for function bodies, whose
+     * frame is allocated by the call.
+     */
+    static final class Sequence extends StmtNode {
+        private final StmtNode[] statements;
+
+        Sequence(StmtNode[] statements) {
+            this.statements = statements;
+            for (StmtNode statement : statements) {
+                adopt(statement);
+            }
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            for (StmtNode statement : statements) {
+                Object completion = statement.execute(frame);
+                if (completion != NORMAL) return completion;
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class Block extends StmtNode {
+        private final int frameSize;
+        private final StmtNode[] statements;
+
+        Block(int frameSize, StmtNode[] statements) {
+            this.frameSize = frameSize;
+            this.statements = statements;
+            for (StmtNode statement : statements) {
+                adopt(statement);
+            }
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Environment inner = new Environment(frame, frameSize);
+            for (StmtNode statement : statements) {
+                Object completion = statement.execute(inner);
+                if (completion != NORMAL) return completion;
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class If extends StmtNode {
+        private ExprNode condition;
+        private final StmtNode thenBranch;
+        private final StmtNode elseBranch;
+
+        If(ExprNode condition, StmtNode thenBranch, StmtNode elseBranch) {
+            this.condition = adopt(condition);
+            this.thenBranch = adopt(thenBranch);
+            this.elseBranch = adopt(elseBranch);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            if (condition.executeCondition(frame)) {
+                return thenBranch.execute(frame);
+            } else if (elseBranch != null) {
+                return elseBranch.execute(frame);
+            }
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            condition = (ExprNode) replacement;
+        }
+    }
+
+    static final class While extends StmtNode {
+        private ExprNode condition;
+        private final StmtNode body;
+
+        While(ExprNode condition, StmtNode body) {
+            this.condition = adopt(condition);
+            this.body = adopt(body);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            while (condition.executeCondition(frame)) {
+                Object completion = body.execute(frame);
+                if (completion != NORMAL) return completion;
+            }
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            condition = (ExprNode) replacement;
+        }
+    }
+
+    static final class Return extends StmtNode {
+        private ExprNode value;
+
+        Return(ExprNode value) {
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return value == null ? null : value.execute(frame);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            value = (ExprNode) replacement;
+        }
+    }
+
+    /**
+     * Creates a closure over the current frame. The body is built once per
+     * declaration, so every closure shares the same specializations.
+     */
+    static final class Function extends StmtNode {
+        private final Token name;
+        private final int arity;
+        private final int frameSize;
+        private final int slot;
+        private final Globals globals;
+        private final StmtNode body;
+
+        Function(Token name, int arity, int frameSize, int slot, Globals globals, StmtNode body) {
+            this.name = name;
+            this.arity = arity;
+            this.frameSize = frameSize;
+            this.slot = slot;
+            this.globals = globals;
+            this.body = adopt(body);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            NodeFunction function = new NodeFunction(name.lexeme(), arity, frameSize, body, frame);
+            if (slot < 0) {
+                globals.define(name.symbol(), function);
+            } else {
+                frame.define(slot, function);
+            }
+            return NORMAL;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.stahu.lox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Flight Recorder events and JMX counters for the interpreter, switched on
+ * with {@code -Dlox.telemetry=true}. {@link #ENABLED} is a constant, so when it
+ * is off the JIT drops every guarded call site and nothing is counted or
+ * allocated.
+ */
+final class Telemetry {
+    static final boolean ENABLED = Boolean.getBoolean("lox.telemetry");
+    static final String OBJECT_NAME = "com.stahu.lox:type=Interpreter";
+
+    // Arities above this are counted together in the last bucket.
+    static final int MAX_ARITY = 8;
+
+    static final LongAdder statements = new LongAdder();
+    static final LongAdder frames = new LongAdder();
+    static final LongAdder lookups = new LongAdder();
+    static final LongAdder depthWalked = new LongAdder();
+    static final LongAdder[] callsByArity = new LongAdder[MAX_ARITY + 1];
+
+    static {
+        for (int i = 0; i < callsByArity.length; i++) {
+            callsByArity[i] = new LongAdder();
+        }
+    }
+
+    private Telemetry() {
+    }
+
+    /**
+     * Registers the {@link InterpreterStatsMBean}. Does nothing unless
+     * telemetry is enabled.
+     */
+    static void register() {
+        if (!ENABLED) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(new InterpreterStats(), new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.err.println("Could not register " + OBJECT_NAME + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts timing a phase of a run, or returns {@code null} when telemetry
+     * is disabled. Pass the result to {@link #endPhase}.
+     */
+    static PhaseEvent beginPhase(String phase) {
+        if (!ENABLED) return null;
+        PhaseEvent event = new PhaseEvent();
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+
+    static void endPhase(PhaseEvent event) {
+        if (ENABLED) event.commit();
+    }
+
+    static void runtimeError(String message, int line) {
+        RuntimeErrorEvent event = new RuntimeErrorEvent();
+        event.message = message;
+        event.line = line;
+        event.commit();
+    }
+
+    static void call(int arity) {
+        callsByArity[Math.min(arity, MAX_ARITY)].increment();
+    }
+
+    static void lookup(int distance) {
+        lookups.increment();
+        depthWalked.add(distance);
+    }
+
+    @Name("com.stahu.lox.Call")
+    @Label("Lox Function Call")
+    @Category("Lox")
+    static final class CallEvent extends Event {
+        @Label("Function")
+        String function;
+    }
+
+    @Name("com.stahu.lox.RuntimeError")
+    @Label("Lox Runtime Error")
+    @Category("Lox")
+    static final class RuntimeErrorEvent extends Event {
+        @Label("Message")
+        String message;
+
+        @Label("Line")
+        int line;
+    }
+
+    @Name("com.stahu.lox.Phase")
+    @Label("Lox Run Phase")
+    @Description("Scanning, parsing, resolving or executing a script")
+    @Category("Lox")
+    static final class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+    }
+}
@@ -0,0 +1,15 @@
+package com.stahu.lox;
+
+/**
+ * Thrown by a typed {@code execute} method of an {@link ExprNode} when the
+ * value it produced does not have the requested primitive type. Carries the
+ * value so the caller can continue on its generic path without re-executing.
+ */
+class UnexpectedResultException extends Exception {
+    final Object result;
+
+    UnexpectedResultException(Object result) {
+        super(null, null, false, false);
+        this.result = result;
+    }
+}
@@ -0,0 +1,75 @@
+package com.stahu.lox;
+
+/**
+ * Value semantics shared by every execution backend, so the tree walker and
+ * the bytecode VM agree on truthiness, equality, printing and {@code +}.
+ */
+final class Values {
+
+    private Values() {
+    }
+
+    static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean bool) return bool;
+        return true;
+    }
+
+    /**
+     * Whether a value is a Lox string, which is either a {@link String} or a
+     * {@link ConcatString} built by {@code +}.
+     */
+    static boolean isString(Object object) {
+        return object instanceof String || object instanceof ConcatString;
+    }
+
+    static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null) return true;
+        if (a == null) return false;
+        if (a instanceof ConcatString) a = a.toString();
+        if (b instanceof ConcatString) b = b.toString();
+
+        return a.equals(b);
+    }
+
+    static String stringify(Object object) {
+        if (object == null) return "nil";
+
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+        return object.toString();
+    }
+
+    /**
+     * Applies {@code +}. Returns {@code null} when the operands are not two
+     * numbers, two strings or a string and a number; the caller reports the
+     * error with its own location.
+     */
+    static Object add(Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) {
+            return (double)left + (double)right;
+        }
+        if (isString(left) && isString(right)) {
+            return ConcatString.concat(left, right);
+        }
+        if (left instanceof Double && isString(right)) {
+            Object temp = left;
+            left = right;
+            right = temp;
+        }
+        if (isString(left) && right instanceof Double dRight) {
+            String sLeft = left.toString();
+            double sum = 0;
+            for (int i = 0; i < sLeft.length(); i++) {
+                sum += sLeft.charAt(i);
+            }
+            return sum + dRight;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,310 @@
+package com.stahu.lox;
+
+import com.stahu.lox.error.RuntimeError;
+import com.stahu.lox.model.Symbol;
+
+import java.util.Arrays;
+
+/**
+ * Stack-based interpreter for code produced by {@link BytecodeCompiler}.
+ * Lox-to-Lox calls push a {@link CallFrame} inside the dispatch loop instead
+ * of recursing on the Java stack.
+ */
+class VirtualMachine {
+
+    private static class CallFrame {
+        VmClosure closure;
+        Environment environment;
+        int ip;
+        int base;
+    }
+
+    final Globals globals = new Globals();
+    private final OutputSink out;
+    private Object[] stack = new Object[256];
+    private int stackTop = 0;
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+
+    VirtualMachine() {
+        this(Lox.STDOUT);
+    }
+
+    VirtualMachine(OutputSink out) {
+        this.out = out;
+        Natives.define(globals);
+    }
+
+    void interpret(VmFunction script) {
+        try {
+            pushFrame(new VmClosure(script, null, this), null);
+            run(0);
+        } catch (RuntimeError error) {
+            stackTop = 0;
+            frameCount = 0;
+            out.flush();
+            Lox.runtimeError(error);
+        }
+    }
+
+    /**
+     * Calls a compiled closure from outside the dispatch loop, e.g. from a
+     * native function, and returns its result.
+     */
+    Object call(VmClosure closure, Object[] arguments) {
+        Environment environment = new Environment(closure.closure, closure.function.frameSize);
+        for (int i = 0; i < arguments.length; i++) {
+            environment.define(i, arguments[i]);
+        }
+        int exitDepth = frameCount;
+        pushFrame(closure, environment);
+        return run(exitDepth);
+    }
+
+    private void pushFrame(VmClosure closure, Environment environment) {
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        }
+        CallFrame frame = frames[frameCount];
+        if (frame == null) {
+            frame = new CallFrame();
+            frames[frameCount] = frame;
+        }
+        frame.closure = closure;
+        frame.environment = environment;
+        frame.ip = 0;
+        frame.base = stackTop;
+        frameCount++;
+    }
+
+    private void push(Object value) {
+        if (stackTop == stack.length) {
+            stack = Arrays.copyOf(stack, stackTop * 2);
+        }
+        stack[stackTop++] = value;
+    }
+
+    private Object pop() {
+        // Stale slots above stackTop are overwritten by later pushes.
+        return stack[--stackTop];
+    }
+
+    private Object peek() {
+        return stack[stackTop - 1];
+    }
+
+    private static int readShort(byte[] code, int ip) {
+        return ((code[ip] & 0xFF) << 8) | (code[ip + 1] & 0xFF);
+    }
+
+    private static void checkNumberOperand(int line, Object operand) {
+        if (operand instanceof Double) return;
+        throw new RuntimeError(line, "Operand must be a number.");
+    }
+
+    private static void checkNumberOperands(int line, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) return;
+        throw new RuntimeError(line, "Operands must be numbers.");
+    }
+
+    /**
+     * Runs the dispatch loop until the frame count drops back to
+     * {@code exitDepth} and returns the value of the last return.
+     */
+    private Object run(int exitDepth) {
+        CallFrame frame = frames[frameCount - 1];
+        Chunk chunk = frame.closure.function.chunk;
+        byte[] code = chunk.code;
+        Object[] constants = chunk.constants();
+        Environment environment = frame.environment;
+        int ip = frame.ip;
+
+        for (;;) {
+            int start = ip;
+            switch (code[ip++]) {
+                case OpCode.CONSTANT -> {
+                    push(constants[readShort(code, ip)]);
+                    ip += 2;
+                }
+                case OpCode.NIL -> push(null);
+                case OpCode.TRUE -> push(true);
+                case OpCode.FALSE -> push(false);
+                case OpCode.POP -> pop();
+                case OpCode.GET_LOCAL -> {
+                    push(environment.getAt(readShort(code, ip), readShort(code, ip + 2)));
+                    ip += 4;
+                }
+                case OpCode.SET_LOCAL -> {
+                    environment.assignAt(readShort(code, ip), readShort(code, ip + 2), peek());
+                    ip += 4;
+                }
+                case OpCode.DEFINE_LOCAL -> {
+                    environment.define(readShort(code, ip), pop());
+                    ip += 2;
+                }
+                case OpCode.GET_GLOBAL -> {
+                    Symbol name = (Symbol) constants[readShort(code, ip)];
+                    push(globals.get(name, chunk.lines[start]));
+                    ip += 2;
+                }
+                case OpCode.SET_GLOBAL -> {
+                    Symbol name = (Symbol) constants[readShort(code, ip)];
+                    globals.assign(name, chunk.lines[start], peek());
+                    ip += 2;
+                }
+                case OpCode.DEFINE_GLOBAL -> {
+                    globals.define((Symbol) constants[readShort(code, ip)], pop());
+                    ip += 2;
+                }
+                case OpCode.EQUAL -> {
+                    Object right = pop();
+                    push(Values.isEqual(pop(), right));
+                }
+                case OpCode.NOT_EQUAL -> {
+                    Object right = pop();
+                    push(!Values.isEqual(pop(), right));
+                }
+                case OpCode.GREATER -> {
+                    Object right = pop();
+                    Object left = pop();
+                    checkNumberOperands(chunk.lines[start], left, right);
+                    push((double)left > (double)right);
+                }
+                case OpCode.GREATER_EQUAL -> {
+                    Object right = pop();
+                    Object left = pop();
+                    checkNumberOperands(chunk.lines[start], left, right);
+                    push((double)left >= (double)right);
+                }
+                case OpCode.LESS -> {
+                    Object right = pop();
+                    Object left = pop();
+                    checkNumberOperands(chunk.lines[start], left, right);
+                    push((double)left < (double)right);
+                }
+                case OpCode.LESS_EQUAL -> {
+                    Object right = pop();
+                    Object left = pop();
+                    checkNumberOperands(chunk.lines[start], left, right);
+                    push((double)left <= (double)right);
+                }
+                case OpCode.ADD -> {
+                    Object right = pop();
+                    Object sum = Values.add(pop(), right);
+                    if (sum == null) {
+                        throw new RuntimeError(chunk.lines[start], "Operands must be two numbers or two strings.");
+                    }
+                    push(sum);
+                }
+                case OpCode.SUBTRACT -> {
+                    Object right = pop();
+                    Object left = pop();
+                    checkNumberOperands(chunk.lines[start], left, right);
+                    push((double)left - (double)right);
+                }
+                case OpCode.MULTIPLY -> {
+                    Object right = pop();
+                    Object left = pop();
+                    checkNumberOperands(chunk.lines[start], left, right);
+                    push((double)left * (double)right);
+                }
+                case OpCode.DIVIDE -> {
+                    Object right = pop();
+                    Object left = pop();
+                    checkNumberOperands(chunk.lines[start], left, right);
+                    if ((double)right == (double) 0) {
+                        throw new RuntimeError(chunk.lines[start], "Division by zero.");
+                    }
+                    push((double)left / (double)right);
+                }
+                case OpCode.NOT -> push(!Values.isTruthy(pop()));
+                case OpCode.NEGATE -> {
+                    Object operand = pop();
+                    checkNumberOperand(chunk.lines[start], operand);
+                    push(-(double)operand);
+                }
+                case OpCode.PRINT -> out.println(Values.stringify(pop()));
+                case OpCode.JUMP -> ip += 2 + readShort(code, ip);
+                case OpCode.JUMP_IF_FALSE -> {
+                    if (Values.isTruthy(peek())) {
+                        ip += 2;
+                    } else {
+                        ip += 2 + readShort(code, ip);
+                    }
+                }
+                case OpCode.LOOP -> ip -= readShort(code, ip) - 2;
+                case OpCode.CALL -> {
+                    int argCount = code[ip++] & 0xFF;
+                    Object callee = stack[stackTop - argCount - 1];
+                    if (!(callee instanceof LoxCallable function)) {
+                        throw new RuntimeError(chunk.lines[start],
+                                "Can only call functions and classes.");
+                    }
+                    if (argCount != function.arity()) {
+                        throw new RuntimeError(chunk.lines[start], "Expected " +
+                                function.arity() + " arguments but got " +
+                                argCount + ".");
+                    }
+
+                    int argsStart = stackTop - argCount;
+                    if (callee instanceof VmClosure closure) {
+                        Environment callEnvironment =
+                                new Environment(closure.closure, closure.function.frameSize);
+                        for (int i = 0; i < argCount; i++) {
+                            callEnvironment.define(i, stack[argsStart + i]);
+                        }
+                        Arrays.fill(stack, argsStart - 1, stackTop, null);
+                        stackTop = argsStart - 1;
+
+                        frame.ip = ip;
+                        frame.environment = environment;
+                        pushFrame(closure, callEnvironment);
+
+                        frame = frames[frameCount - 1];
+                        chunk = closure.function.chunk;
+                        code = chunk.code;
+                        constants = chunk.constants();
+                        environment = callEnvironment;
+                        ip = 0;
+                    } else {
+                        Object[] arguments = Arrays.copyOfRange(stack, argsStart, stackTop);
+                        Arrays.fill(stack, argsStart - 1, stackTop, null);
+                        stackTop = argsStart - 1;
+                        try {
+                            push(function.call(null, arguments));
+                        } catch (Natives.Failure failure) {
+                            throw new RuntimeError(chunk.lines[start], failure.getMessage());
+                        }
+                    }
+                }
+                case OpCode.CLOSURE -> {
+                    VmFunction function = (VmFunction) constants[readShort(code, ip)];
+                    push(new VmClosure(function, environment, this));
+                    ip += 2;
+                }
+                case OpCode.ENTER_SCOPE -> {
+                    environment = new Environment(environment, readShort(code, ip));
+                    ip += 2;
+                }
+                case OpCode.EXIT_SCOPE -> environment = environment.enclosing;
+                case OpCode.RETURN -> {
+                    Object result = pop();
+                    stackTop = frame.base;
+                    frameCount--;
+                    if (frameCount == exitDepth) {
+                        return result;
+                    }
+                    push(result);
+
+                    frame = frames[frameCount - 1];
+                    chunk = frame.closure.function.chunk;
+                    code = chunk.code;
+                    constants = chunk.constants();
+                    environment = frame.environment;
+                    ip = frame.ip;
+                }
+                default -> throw new IllegalStateException("Unknown opcode " + code[start]);
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.stahu.lox;
+
+/**
+ * Runtime function value of the bytecode backend: a compiled function bound
+ * to the environment it was declared in.
+ */
+class VmClosure implements LoxCallable {
+    final VmFunction function;
+    final Environment closure;
+    private final VirtualMachine vm;
+
+    VmClosure(VmFunction function, Environment closure, VirtualMachine vm) {
+        this.function = function;
+        this.closure = closure;
+        this.vm = vm;
+    }
+
+    @Override
+    public int arity() {
+        return function.arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        return vm.call(this, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return function.toString();
+    }
+}
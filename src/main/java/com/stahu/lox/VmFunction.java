@@ -0,0 +1,22 @@
+package com.stahu.lox;
+
+/**
+ * Compiled form of a function declaration (or of the top-level script).
+ */
+class VmFunction {
+    final String name;
+    final int arity;
+    final int frameSize;
+    final Chunk chunk = new Chunk();
+
+    VmFunction(String name, int arity, int frameSize) {
+        this.name = name;
+        this.arity = arity;
+        this.frameSize = frameSize;
+    }
+
+    @Override
+    public String toString() {
+        return name == null ? "<script>" : "<fn " + name + ">";
+    }
+}
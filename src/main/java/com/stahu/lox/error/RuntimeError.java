@@ -4,11 +4,21 @@ import com.stahu.lox.model.Token;
 
 public class RuntimeError extends RuntimeException {
     final Token token;
+    final int line;
 
     public Token token() { return token; }
 
+    public int line() { return line; }
+
     public RuntimeError(Token token, String message) {
         super(message);
         this.token = token;
+        this.line = token.line();
+    }
+
+    public RuntimeError(int line, String message) {
+        super(message);
+        this.token = null;
+        this.line = line;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,91 @@
+package com.stahu.lox.model;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical identifier. Every occurrence of a name maps to the same symbol
+ * while any is in use, so names compare by identity and globals are found by
+ * {@link #id()}, which is dense from zero.
+ * <p>
+ * The table holds symbols weakly. Once no token, tree or global refers to a
+ * symbol it is dropped and its id handed to the next new name, so a
+ * long-running process only keeps the names of what it still runs, and the
+ * ids stay as few as the symbols alive at once.
+ */
+public final class Symbol {
+    private static final ConcurrentHashMap<String, Entry> table = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Symbol> collected = new ReferenceQueue<>();
+    // Guarded by table.
+    private static int nextId = 0;
+    private static int[] freeIds = new int[16];
+    private static int freeCount = 0;
+
+    private static final class Entry extends WeakReference<Symbol> {
+        final String name;
+        final int id;
+
+        Entry(Symbol symbol) {
+            super(symbol, collected);
+            this.name = symbol.name;
+            this.id = symbol.id;
+        }
+    }
+
+    private final String name;
+    private final int id;
+
+    private Symbol(String name, int id) {
+        this.name = name;
+        this.id = id;
+    }
+
+    public static Symbol intern(String name) {
+        Entry entry = table.get(name);
+        Symbol symbol = entry == null ? null : entry.get();
+        if (symbol != null) return symbol;
+
+        synchronized (table) {
+            expunge();
+            entry = table.get(name);
+            symbol = entry == null ? null : entry.get();
+            if (symbol == null) {
+                symbol = new Symbol(name, freeCount > 0 ? freeIds[--freeCount] : nextId++);
+                table.put(name, new Entry(symbol));
+            }
+            return symbol;
+        }
+    }
+
+    /**
+     * Removes the entries of collected symbols and frees their ids. Only a
+     * collected symbol's id is reused, so no live symbol ever shares one.
+     */
+    private static void expunge() {
+        for (Reference<? extends Symbol> reference; (reference = collected.poll()) != null; ) {
+            Entry entry = (Entry) reference;
+            // The name may have been interned again since.
+            table.remove(entry.name, entry);
+            if (freeCount == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+            }
+            freeIds[freeCount++] = entry.id;
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
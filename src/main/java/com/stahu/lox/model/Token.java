@@ -1,6 +1,10 @@
 package com.stahu.lox.model;
 
-public record Token(TokenType type, String lexeme, Object literal, int line) {
+/**
+ * A scanned token. Identifiers carry their interned {@link Symbol}, whose name
+ * is also the lexeme; other tokens have none.
+ */
+public record Token(TokenType type, String lexeme, Object literal, int line, Symbol symbol) {
 
     public String toString() {
         return type + " " + lexeme + " " + literal;
@@ -0,0 +1,193 @@
+package com.stahu.lox.model;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Scanned tokens stored column-wise in primitive arrays: type, start offset,
+ * length and line. Nothing is copied out of the source while scanning.
+ * Lexemes of punctuation and keywords are shared constants. Identifiers are
+ * interned into {@link Symbol}s through a small table matched against the
+ * source, so a name is copied out once per buffer however often it occurs.
+ * Literal values are cut from the source only when a {@link Token} is
+ * materialized.
+ * <p>
+ * Indexes are absolute positions in the token stream. When tokens are
+ * consumed while scanning is still in progress, {@link #discardBefore} drops
+ * the ones already parsed so the buffer stays small.
+ */
+public final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final String[] FIXED_LEXEMES = new String[TYPES.length];
+
+    static {
+        for (TokenType type : TYPES) {
+            FIXED_LEXEMES[type.ordinal()] = fixedLexeme(type);
+        }
+    }
+
+    private static String fixedLexeme(TokenType type) {
+        return switch (type) {
+            case LEFT_PAREN -> "(";
+            case RIGHT_PAREN -> ")";
+            case LEFT_BRACE -> "{";
+            case RIGHT_BRACE -> "}";
+            case COMMA -> ",";
+            case DOT -> ".";
+            case MINUS -> "-";
+            case PLUS -> "+";
+            case SEMICOLON -> ";";
+            case SLASH -> "/";
+            case STAR -> "*";
+            case BANG -> "!";
+            case BANG_EQUAL -> "!=";
+            case EQUAL -> "=";
+            case EQUAL_EQUAL -> "==";
+            case GREATER -> ">";
+            case GREATER_EQUAL -> ">=";
+            case LESS -> "<";
+            case LESS_EQUAL -> "<=";
+            case IDENTIFIER, STRING, NUMBER -> null;
+            case EOF -> "";
+            // Keywords are spelled like their type.
+            default -> type.name().toLowerCase(Locale.ROOT);
+        };
+    }
+
+    private final CharSequence source;
+    private byte[] types = new byte[64];
+    private int[] starts = new int[64];
+    private int[] lengths = new int[64];
+    private int[] lines = new int[64];
+    private int size = 0;
+    // Absolute index of the first buffered token.
+    private int base = 0;
+    // Open-addressed by the hash of the identifier's characters.
+    private Symbol[] symbols = new Symbol[256];
+    private int symbolCount = 0;
+
+    public TokenBuffer(CharSequence source) {
+        this.source = source;
+    }
+
+    public void add(TokenType type, int start, int length, int line) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        size++;
+    }
+
+    /**
+     * Returns the absolute index one past the last scanned token.
+     */
+    public int end() {
+        return base + size;
+    }
+
+    /**
+     * Forgets every token before {@code index}.
+     */
+    public void discardBefore(int index) {
+        int count = index - base;
+        if (count <= 0) return;
+
+        size -= count;
+        System.arraycopy(types, count, types, 0, size);
+        System.arraycopy(starts, count, starts, 0, size);
+        System.arraycopy(lengths, count, lengths, 0, size);
+        System.arraycopy(lines, count, lines, 0, size);
+        base = index;
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[index - base]];
+    }
+
+    public int line(int index) {
+        return lines[index - base];
+    }
+
+    public String lexeme(int index) {
+        int i = index - base;
+        String fixed = FIXED_LEXEMES[types[i]];
+        if (fixed != null) return fixed;
+        if (types[i] == TokenType.IDENTIFIER.ordinal()) return symbol(index).name();
+        return source.subSequence(starts[i], starts[i] + lengths[i]).toString();
+    }
+
+    /**
+     * Returns the symbol of an identifier token.
+     */
+    public Symbol symbol(int index) {
+        int i = index - base;
+        int start = starts[i];
+        int length = lengths[i];
+        // Same hash as String.hashCode(), so it can be checked against names.
+        int hash = 0;
+        for (int k = 0; k < length; k++) {
+            hash = 31 * hash + source.charAt(start + k);
+        }
+
+        int mask = symbols.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            Symbol symbol = symbols[slot];
+            if (symbol == null) break;
+            if (symbol.name().hashCode() == hash && spells(symbol.name(), start, length)) return symbol;
+        }
+
+        Symbol symbol = Symbol.intern(source.subSequence(start, start + length).toString());
+        if (++symbolCount * 2 > symbols.length) {
+            Symbol[] old = symbols;
+            symbols = new Symbol[old.length * 2];
+            for (Symbol existing : old) {
+                if (existing != null) insert(existing);
+            }
+        }
+        insert(symbol);
+        return symbol;
+    }
+
+    private boolean spells(String name, int start, int length) {
+        if (name.length() != length) return false;
+        for (int k = 0; k < length; k++) {
+            if (name.charAt(k) != source.charAt(start + k)) return false;
+        }
+        return true;
+    }
+
+    private void insert(Symbol symbol) {
+        int mask = symbols.length - 1;
+        int slot = symbol.name().hashCode() & mask;
+        while (symbols[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        symbols[slot] = symbol;
+    }
+
+    public Object literal(int index) {
+        switch (type(index)) {
+            case NUMBER:
+                return Double.parseDouble(lexeme(index));
+            case STRING:
+                // Trim the surrounding quotes.
+                int i = index - base;
+                return source.subSequence(starts[i] + 1, starts[i] + lengths[i] - 1).toString();
+            default:
+                return null;
+        }
+    }
+
+    public Token token(int index) {
+        TokenType type = type(index);
+        Symbol symbol = type == TokenType.IDENTIFIER ? symbol(index) : null;
+        return new Token(type, lexeme(index), literal(index), line(index), symbol);
+    }
+}
@@ -0,0 +1,23 @@
+package com.stahu.lox;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BytecodeCompilerTest {
+
+    @Test
+    void globalNamesShareOneConstant() throws Exception {
+        // Far more accesses than a chunk has room for constants.
+        StringBuilder source = new StringBuilder("var count = 0;\n");
+        for (int i = 0; i < 70_000; i++) {
+            source.append("count = count + 1;\n");
+        }
+        source.append("print count;\n");
+
+        Scripts.Result result = Scripts.run(source.toString(), "--vm");
+
+        assertEquals(0, result.exitCode(), result.err());
+        assertEquals("70000\n", result.out());
+    }
+}
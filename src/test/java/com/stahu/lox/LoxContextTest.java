@@ -0,0 +1,61 @@
+package com.stahu.lox;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoxContextTest {
+
+    @Test
+    void globalsOutliveTheProgramsThatDefinedThem() {
+        LoxEngine engine = new LoxEngine(false);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LoxContext context = new LoxContext(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+
+        assertTrue(context.run(engine.compile("var onlyDefinedHere = 42;")));
+        // Nothing but the context refers to the name now; symbols are held weakly.
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        assertTrue(context.run(engine.compile("print onlyDefinedHere;")));
+
+        assertEquals("42\n", bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void cancellingStopsCompiledLoops() throws Exception {
+        LoxEngine engine = new LoxEngine(false);
+        LoxContext context = new LoxContext(new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+        // Warm spin up until it is compiled, then enter its loop for good.
+        LoxProgram program = engine.compile("""
+                fun spin(n) { while (n > 0) { n = n + 1; } return n; }
+                for (var i = 0; i < 2 * 1000; i = i + 1) spin(0);
+                spin(1);
+                """);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread run = new Thread(() -> {
+            try {
+                context.run(program);
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        run.setDaemon(true);
+        run.start();
+        Thread.sleep(500);
+        context.cancel();
+        run.join(10_000);
+
+        assertFalse(run.isAlive());
+        assertInstanceOf(CancellationException.class, thrown.get());
+    }
+}
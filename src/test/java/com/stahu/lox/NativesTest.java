@@ -0,0 +1,23 @@
+package com.stahu.lox;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NativesTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"--optimize", "--vm", "--nodes", "--closures"})
+    void failureIsARuntimeErrorOnEveryBackend(String backend) throws Exception {
+        Scripts.Result result = Scripts.run("""
+                print "before";
+                var numbers = list();
+                print get(numbers, 5);
+                """, backend);
+
+        assertEquals(70, result.exitCode());
+        assertEquals("before\n", result.out());
+        assertEquals("List index out of range.\n[line 3]\n", result.err());
+    }
+}
@@ -0,0 +1,30 @@
+package com.stahu.lox;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OptimizerTest {
+
+    @Test
+    void redeclaredVariablesAreNotConstant() throws Exception {
+        Scripts.Result result = Scripts.run("""
+                {
+                  var a = 1;
+                  fun f() { return a; }
+                  var a = 2;
+                  print f();
+                }
+                fun g() {
+                  var b = 1;
+                  fun h() { return b; }
+                  var b = 2;
+                  return h();
+                }
+                print g();
+                """, "--optimize");
+
+        assertEquals(0, result.exitCode(), result.err());
+        assertEquals("2\n2\n", result.out());
+    }
+}
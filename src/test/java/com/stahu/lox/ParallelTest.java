@@ -0,0 +1,39 @@
+package com.stahu.lox;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParallelTest {
+
+    @Test
+    void mapReturnsAListThatCanGrow() throws Exception {
+        Scripts.Result result = Scripts.run("""
+                fun double(x) { return x * 2; }
+                var numbers = list();
+                append(numbers, 1);
+                append(numbers, 2);
+                var doubled = parallelMap(numbers, double);
+                append(doubled, 8);
+                print length(doubled);
+                print get(doubled, 1);
+                print get(doubled, 2);
+                """);
+
+        assertEquals(0, result.exitCode(), result.err());
+        assertEquals("3\n4\n8\n", result.out());
+    }
+
+    @Test
+    void workersCanAppendToASharedList() throws Exception {
+        Scripts.Result result = Scripts.run("""
+                var squares = list();
+                fun square(i) { append(squares, i * i); }
+                parallelFor(0, 100000, square);
+                print length(squares);
+                """);
+
+        assertEquals(0, result.exitCode(), result.err());
+        assertEquals("100000\n", result.out());
+    }
+}
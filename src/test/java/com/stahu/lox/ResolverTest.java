@@ -0,0 +1,24 @@
+package com.stahu.lox;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResolverTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"--optimize", "--vm", "--nodes", "--closures"})
+    void blockLocalFunctionsCanCallEachOther(String backend) throws Exception {
+        Scripts.Result result = Scripts.run("""
+                {
+                  fun isEven(n) { if (n == 0) return true; return isOdd(n - 1); }
+                  fun isOdd(n) { if (n == 0) return false; return isEven(n - 1); }
+                  print isEven(4);
+                }
+                """, backend);
+
+        assertEquals(0, result.exitCode(), result.err());
+        assertEquals("true\n", result.out());
+    }
+}
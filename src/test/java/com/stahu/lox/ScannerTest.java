@@ -0,0 +1,19 @@
+package com.stahu.lox;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ScannerTest {
+
+    @Test
+    void reportsANonAsciiCharacterOnce() throws Exception {
+        Scripts.Result result = Scripts.run("var é = 2;\n");
+
+        assertEquals(65, result.exitCode());
+        assertEquals("""
+                [line 1] Error: Unexpected character.
+                [line 1] Error at '=': Expect variable name.
+                """, result.err());
+    }
+}
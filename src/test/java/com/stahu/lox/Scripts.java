@@ -0,0 +1,47 @@
+package com.stahu.lox;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs Lox scripts through the command line in a separate JVM, so tests see
+ * the output, errors and exit code a user would.
+ */
+final class Scripts {
+    record Result(int exitCode, String out, String err) {
+    }
+
+    private Scripts() {
+    }
+
+    static Result run(String source, String... options) throws IOException, InterruptedException {
+        Path script = Files.createTempFile("lox-test", ".lox");
+        Path out = Files.createTempFile("lox-test", ".out");
+        Path err = Files.createTempFile("lox-test", ".err");
+        try {
+            Files.writeString(script, source);
+            List<String> command = new ArrayList<>();
+            command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(Lox.class.getName());
+            command.add("--no-cache");
+            command.addAll(List.of(options));
+            command.add(script.toString());
+
+            int exitCode = new ProcessBuilder(command)
+                    .redirectOutput(out.toFile())
+                    .redirectError(err.toFile())
+                    .start()
+                    .waitFor();
+            return new Result(exitCode, Files.readString(out), Files.readString(err));
+        } finally {
+            Files.delete(script);
+            Files.delete(out);
+            Files.delete(err);
+        }
+    }
+}